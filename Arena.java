@@ -0,0 +1,257 @@
+/**
+ *
+ * Plays two game logics against each other without a display and reports
+ * the results. Games run in parallel, each worker thread reusing its own
+ * pair of game logic instances. The logics swap colors every game. With
+ * the gamelogic.journal property set, every game is recorded in the
+ * journal under the names of both logics.
+ *
+ */
+
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Arena
+{
+    private static final String JOURNAL_FILE = System.getProperty("gamelogic.journal");
+
+    private final String _logic1;
+    private final String _logic2;
+    private final int _cols;
+    private final int _rows;
+
+    // Indexed by logic: 0 = the first logic given, 1 = the second
+    private final AtomicInteger[] _wins = {new AtomicInteger(), new AtomicInteger()};
+    private final AtomicInteger[] _invalidMoves = {new AtomicInteger(), new AtomicInteger()};
+    private final AtomicLong[] _moveNanos = {new AtomicLong(), new AtomicLong()};
+    private final AtomicLong[] _maxMoveNanos = {new AtomicLong(), new AtomicLong()};
+    private final AtomicInteger[] _moves = {new AtomicInteger(), new AtomicInteger()};
+    private final AtomicInteger _draws = new AtomicInteger();
+    private final AtomicInteger _nextGame = new AtomicInteger();
+
+    /**
+     * Valid arguments: logic1 logic2 [games parallelGames moveTimeMs cols rows]
+     * standard values are 100 games, one game per core, 100 ms per move on 7x6
+     */
+    public static void main(String[] args)
+    {
+        if(args.length < 2) {
+            printHelp("");
+            System.exit(1);
+        }
+
+        int games = 100;
+        int parallelGames = Runtime.getRuntime().availableProcessors();
+        long moveTimeMs = 100;
+        int cols = 7;
+        int rows = 6;
+        try {
+            if(args.length >= 3) games = Integer.parseInt(args[2]);
+            if(args.length >= 4) parallelGames = Integer.parseInt(args[3]);
+            if(args.length >= 5) moveTimeMs = Long.parseLong(args[4]);
+            if(args.length >= 6) cols = Integer.parseInt(args[5]);
+            if(args.length >= 7) rows = Integer.parseInt(args[6]);
+        } catch(NumberFormatException nfe) {
+            printHelp("Could not parse number: " + nfe.getMessage());
+            System.exit(1);
+        }
+
+        // Read by the logics when they are loaded, unless given on the command line.
+        setDefaultProperty("gamelogic.debug", "false");
+        setDefaultProperty("gamelogic.moveTimeMs", Long.toString(moveTimeMs));
+        setDefaultProperty("gamelogic.threads", "1");
+
+        Arena arena = new Arena(args[0], args[1], cols, rows);
+        try {
+            arena.play(games, parallelGames);
+        } catch(Exception e) {
+            printHelp(e.toString());
+            System.exit(1);
+        }
+        arena.printReport();
+    }
+
+    public static void printHelp(String errMsg) {
+        if(!errMsg.equals("")) {
+            System.err.println(errMsg);
+        }
+        System.err.println("Usage: java Arena GameLogic1 GameLogic2 [games parallelGames moveTimeMs cols rows]");
+        System.err.println("\tGameLogic{1,2}\t - Classes implementing IGameLogic, humans are not allowed.");
+        System.err.println("\tgames\t\t - Number of games to play, defaults to 100.");
+        System.err.println("\tparallelGames\t - Games played at the same time, defaults to the number of cores.");
+        System.err.println("\tmoveTimeMs\t - Time per move, defaults to 100 ms.");
+        System.err.println("\tcols/rows\t - Board size, defaults to 7 and 6.");
+    }
+
+    private static void setDefaultProperty(String key, String value) {
+        if(System.getProperty(key) == null)
+            System.setProperty(key, value);
+    }
+
+    public Arena(String logic1, String logic2, int cols, int rows) {
+        _logic1 = logic1;
+        _logic2 = logic2;
+        _cols = cols;
+        _rows = rows;
+    }
+
+    /**
+     * Plays the games and waits for all of them to finish.
+     */
+    public void play(int games, int parallelGames) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelGames);
+        List<Future<?>> workers = new ArrayList<Future<?>>();
+        long startTime = System.nanoTime();
+
+        for(int i = 0; i < parallelGames; i++)
+            workers.add(executor.submit(worker(games)));
+        try {
+            for(Future<?> worker : workers)
+                worker.get();
+        } catch(ExecutionException ee) {
+            throw (Exception) ee.getCause();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        System.out.format("%d games in %.1f s%n", games, (System.nanoTime() - startTime) / 1e9);
+    }
+
+    private Callable<Void> worker(final int games) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                IGameLogic[] logics = {createLogic(_logic1), createLogic(_logic2)};
+                GameJournal.Recorder recorder = GameJournal.recorder(JOURNAL_FILE);
+                try {
+                    for(int game = _nextGame.getAndIncrement(); game < games; game = _nextGame.getAndIncrement())
+                        playGame(logics, game % 2 == 0 ? 0 : 1, recorder);
+                } finally {
+                    if(recorder != null)
+                        recorder.finish(IGameLogic.Winner.NOT_FINISHED);
+                    logics[0].close();
+                    logics[1].close();
+                }
+                return null;
+            }
+        };
+    }
+
+    private static IGameLogic createLogic(String className)
+            throws ClassNotFoundException, NoSuchMethodException,
+                   InstantiationException, IllegalAccessException,
+                   InvocationTargetException {
+        IGameLogic logic = ShowGame.parseGameLogicParam(className);
+        if(logic == null)
+            throw new IllegalArgumentException("Humans can not play in the arena.");
+        return logic;
+    }
+
+    /**
+     * Plays one game, refereed on a GameState of its own. A logic that
+     * chooses a full or invalid column, or throws, loses the game.
+     * @param first The index of the logic playing as player 1.
+     * @param recorder Records the game, or null.
+     */
+    private void playGame(IGameLogic[] logics, int first, GameJournal.Recorder recorder) {
+        int[] logicOfPlayer = {first, 1 - first};
+        logics[logicOfPlayer[0]].initializeGame(_cols, _rows, 1);
+        logics[logicOfPlayer[1]].initializeGame(_cols, _rows, 2);
+        GameState referee = GameState.create(_cols, _rows);
+        String[] names = {_logic1, _logic2};
+        if(recorder != null)
+            recorder.start(_cols, _rows, names[logicOfPlayer[0]], names[logicOfPlayer[1]]);
+
+        for(int player = 1; ; player = 3 - player) {
+            int mover = logicOfPlayer[player - 1];
+            int column;
+            long start = System.nanoTime();
+            try {
+                column = logics[mover].decideNextMove();
+            } catch(RuntimeException e) {
+                column = -1;
+            }
+            recordMove(mover, System.nanoTime() - start);
+
+            if(column < 0 || column >= _cols || referee.getCoinsInColumn(column) >= _rows) {
+                _invalidMoves[mover].incrementAndGet();
+                _wins[1 - mover].incrementAndGet();
+                if(recorder != null)
+                    recorder.finish(player == 1 ? IGameLogic.Winner.PLAYER2 : IGameLogic.Winner.PLAYER1);
+                return;
+            }
+
+            referee.addCoin(column, player);
+            if(recorder != null)
+                recorder.addMove(column);
+            logics[0].insertCoin(column, player);
+            logics[1].insertCoin(column, player);
+
+            if(referee.hasFourInARow(player)) {
+                _wins[mover].incrementAndGet();
+                if(recorder != null)
+                    recorder.finish(player == 1 ? IGameLogic.Winner.PLAYER1 : IGameLogic.Winner.PLAYER2);
+                return;
+            }
+            if(referee.isBoardFull()) {
+                _draws.incrementAndGet();
+                if(recorder != null)
+                    recorder.finish(IGameLogic.Winner.TIE);
+                return;
+            }
+        }
+    }
+
+    private void recordMove(int logic, long nanos) {
+        _moves[logic].incrementAndGet();
+        _moveNanos[logic].addAndGet(nanos);
+        long max = _maxMoveNanos[logic].get();
+        while(nanos > max && !_maxMoveNanos[logic].compareAndSet(max, nanos))
+            max = _maxMoveNanos[logic].get();
+    }
+
+    /**
+     * Prints wins, losses and draws from the first logic's side, the Elo
+     * difference that score corresponds to with a 95% interval, and the
+     * move latency of both logics.
+     */
+    public void printReport() {
+        int wins = _wins[0].get();
+        int losses = _wins[1].get();
+        int draws = _draws.get();
+        int games = wins + losses + draws;
+        if(games == 0)
+            return;
+
+        double score = (wins + 0.5 * draws) / games;
+        double variance = (wins * Math.pow(1 - score, 2) + losses * Math.pow(score, 2)
+                + draws * Math.pow(0.5 - score, 2)) / games;
+        double margin = 1.96 * Math.sqrt(variance / games);
+
+        System.out.format("%s vs %s on %dx%d%n", _logic1, _logic2, _cols, _rows);
+        System.out.format("W/L/D: %d/%d/%d  score %.1f%%%n", wins, losses, draws, 100 * score);
+        System.out.format("Elo difference: %s [%s, %s]%n",
+                formatElo(score), formatElo(score - margin), formatElo(score + margin));
+        for(int logic = 0; logic < 2; logic++) {
+            int moves = Math.max(1, _moves[logic].get());
+            System.out.format("%s: %.1f ms average, %.1f ms max per move, %d invalid moves%n",
+                    logic == 0 ? _logic1 : _logic2,
+                    _moveNanos[logic].get() / 1e6 / moves,
+                    _maxMoveNanos[logic].get() / 1e6,
+                    _invalidMoves[logic].get());
+        }
+    }
+
+    private static String formatElo(double score) {
+        if(score <= 0)
+            return "-inf";
+        if(score >= 1)
+            return "+inf";
+        return String.format("%+.0f", -400 * Math.log10(1 / score - 1));
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ *
+ * Scores every position of a file of recorded games:
+ *
+ *     java BatchAnalyzer depth [timeMs input output cols rows]
+ *
+ * Each input line is one game, the columns played as digits, with the
+ * letters a-v for columns 10 and up. Every position of the game that is
+ * not finished is searched to the depth, or for as long as the time
+ * allows if timeMs is not 0, and written as one line:
+ *
+ *     game ply move score depth
+ *
+ * with the game's line number from 1, the coins on the board, the best
+ * column, its score from the side of the player to move and the depth of
+ * the deepest iteration the search completed. Blank lines are skipped,
+ * and lines that are not a valid game are reported on stderr and skipped.
+ *
+ * Games are read and written in chunks, so memory stays bounded and the
+ * output keeps the order of the input. The games of a chunk are searched
+ * in parallel in a fork/join pool, on one transposition table shared by
+ * all games.
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BatchAnalyzer
+{
+    private static final int TABLE_MEGABYTES = Integer.getInteger("gamelogic.ttMegabytes", 64);
+    private static final int GAMES_PER_THREAD_AND_CHUNK = 64;
+
+    private final int _cols;
+    private final int _rows;
+    private final int _depth;
+    private final long _timeMs;
+    private final ForkJoinPool _pool;
+    private final TranspositionTable _transpositionTable;
+    private final AtomicLong _positions = new AtomicLong();
+    private long _lines;
+    private long _games;
+    private long _invalidGames;
+
+    /**
+     * Valid arguments: depth [timeMs input output cols rows]
+     * standard values are no time limit, stdin to stdout on 7x6
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if(args.length < 1) {
+            printHelp("");
+            System.exit(1);
+        }
+
+        int depth = 0;
+        long timeMs = 0;
+        String input = "-";
+        String output = "-";
+        int cols = 7;
+        int rows = 6;
+        try {
+            depth = Integer.parseInt(args[0]);
+            if(args.length >= 2) timeMs = Long.parseLong(args[1]);
+            if(args.length >= 3) input = args[2];
+            if(args.length >= 4) output = args[3];
+            if(args.length >= 5) cols = Integer.parseInt(args[4]);
+            if(args.length >= 6) rows = Integer.parseInt(args[5]);
+        } catch(NumberFormatException nfe) {
+            printHelp("Could not parse number: " + nfe.getMessage());
+            System.exit(1);
+        }
+        if(depth < 1) {
+            printHelp("The depth must be at least 1.");
+            System.exit(1);
+        }
+
+        int threads = Integer.getInteger("gamelogic.threads", Runtime.getRuntime().availableProcessors());
+        BatchAnalyzer analyzer = new BatchAnalyzer(cols, rows, depth, timeMs, threads);
+        long startTime = System.nanoTime();
+        try(BufferedReader in = input.equals("-")
+                    ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                    : Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8);
+            Writer out = output.equals("-")
+                    ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                    : Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)) {
+            analyzer.analyze(in, out);
+        } finally {
+            analyzer.close();
+        }
+
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.err.format("%d games, %d positions in %.1f s, %.0f positions/s, %d invalid games%n",
+                analyzer.getGames(), analyzer.getPositions(), seconds, analyzer.getPositions() / seconds,
+                analyzer.getInvalidGames());
+    }
+
+    public static void printHelp(String errMsg) {
+        if(!errMsg.equals("")) {
+            System.err.println(errMsg);
+        }
+        System.err.println("Usage: java BatchAnalyzer depth [timeMs input output cols rows]");
+        System.err.println("\tdepth\t - The depth every position is searched to.");
+        System.err.println("\ttimeMs\t - Stops a position's search after this time, 0 for no limit, the default.");
+        System.err.println("\tinput/output\t - Files of games and of scores, - for stdin and stdout, the defaults.");
+        System.err.println("\tcols/rows\t - Board size, defaults to 7 and 6.");
+    }
+
+    /**
+     * @param timeMs The most time per position, or 0 to always reach the depth.
+     * @param threads The games searched at the same time.
+     */
+    public BatchAnalyzer(int cols, int rows, int depth, long timeMs, int threads) {
+        _cols = cols;
+        _rows = rows;
+        _depth = depth;
+        _timeMs = timeMs;
+        _pool = new ForkJoinPool(threads);
+        _transpositionTable = new TranspositionTable(TABLE_MEGABYTES);
+    }
+
+    /**
+     * Scores the games of the input, one per line, and writes the
+     * positions in input order. Returns at the end of the input.
+     */
+    public void analyze(BufferedReader in, Writer out) throws IOException {
+        int chunkSize = GAMES_PER_THREAD_AND_CHUNK * _pool.getParallelism();
+        List<GameTask> tasks = new ArrayList<GameTask>(chunkSize);
+        for(String line = in.readLine(); line != null; line = in.readLine()) {
+            _lines++;
+            line = line.trim();
+            if(line.isEmpty())
+                continue;
+            tasks.add(new GameTask(_lines, line));
+            if(tasks.size() == chunkSize) {
+                analyzeChunk(tasks, out);
+                tasks.clear();
+            }
+        }
+        analyzeChunk(tasks, out);
+        out.flush();
+    }
+
+    public void close() {
+        _pool.shutdown();
+    }
+
+    public long getGames() {
+        return _games;
+    }
+
+    public long getPositions() {
+        return _positions.get();
+    }
+
+    public long getInvalidGames() {
+        return _invalidGames;
+    }
+
+    private void analyzeChunk(final List<GameTask> tasks, Writer out) throws IOException {
+        if(tasks.isEmpty())
+            return;
+
+        _games += tasks.size();
+        _pool.invoke(new RecursiveAction() {
+            static final long serialVersionUID = 1;
+
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        for(GameTask task : tasks) {
+            if(task._error != null) {
+                _invalidGames++;
+                System.err.println("Game " + task._game + ": " + task._error);
+            } else {
+                out.write(task._result.toString());
+            }
+        }
+    }
+
+    /**
+     * Replays one game and searches its positions from the last to the
+     * first, so the deeper positions leave table entries for the earlier.
+     */
+    private class GameTask extends RecursiveAction {
+        static final long serialVersionUID = 1;
+
+        private final long _game;
+        private final String _moves;
+        private final StringBuilder _result = new StringBuilder();
+        private String _error;
+
+        GameTask(long game, String moves) {
+            _game = game;
+            _moves = moves;
+        }
+
+        @Override
+        protected void compute() {
+            GameState state = GameState.create(_cols, _rows);
+            List<GameState> positions = new ArrayList<GameState>();
+            for(int i = 0; i < _moves.length(); i++) {
+                int column = Character.digit(_moves.charAt(i), 36);
+                if(column < 0 || column >= _cols || state.getCoinsInColumn(column) >= _rows) {
+                    _error = "Invalid move '" + _moves.charAt(i) + "' at ply " + i;
+                    return;
+                }
+                int player = i % 2 + 1;
+                positions.add(state.copy());
+                state.addCoin(column, player);
+                if(state.hasFourInARow(player) && i < _moves.length() - 1) {
+                    _error = "Moves after the game was won at ply " + (i + 1);
+                    return;
+                }
+            }
+            if(!state.hasFourInARow(1) && !state.hasFourInARow(2) && !state.isBoardFull())
+                positions.add(state);
+
+            String[] lines = new String[positions.size()];
+            SearchControl control = new SearchControl();
+            for(int ply = positions.size() - 1; ply >= 0; ply--)
+                lines[ply] = analyzePosition(positions.get(ply), ply, control);
+            for(String line : lines)
+                _result.append(line);
+            _positions.addAndGet(positions.size());
+        }
+
+        private String analyzePosition(GameState position, int ply, SearchControl control) {
+            Search search = new Search(position, _transpositionTable, ply % 2 + 1, control);
+            int maxCutoff = Math.max(1, _cols * _rows - ply - 1);
+            int move = -1;
+            int score = 0;
+            long startTime = System.nanoTime();
+            control.start(_timeMs);
+            try {
+                for(int cutoff = 1; cutoff <= Math.min(_depth, maxCutoff); cutoff++) {
+                    long nodes = search.getNodes();
+                    move = search.minimax(cutoff);
+                    score = search.getScore();
+                    search.getStats().addIteration(new SearchStats.Iteration(cutoff,
+                            (System.nanoTime() - startTime) / 1000000, search.getNodes() - nodes, move));
+                }
+            } catch (InterruptedException ignored) {
+                // Out of time, the deepest completed iteration counts.
+            }
+            int depth = search.getStats().getDepth();
+            return _game + "\t" + ply + "\t" + move + "\t" + score + "\t" + depth + "\n";
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * The board is stored column-major in two longs with one spare bit on top
+ * of every column, so location = column * (rows + 1) + row. The spare bits
+ * are never set, which lets four-in-a-row be tested by shifting a whole
+ * bitboard instead of walking the cells. Fits boards with
+ * cols * (rows + 1) <= 64, which includes the standard 7x6.
+ *
+ * A mirrored copy of the board is kept up to date on every move, so the
+ * unique position keys of both orientations are always at hand.
+ */
+public class BitboardGameState extends GameState {
+    private long _board;
+    private long _boardCoinColors;
+    private long _mirrorBoard;
+    private long _mirrorCoinColors;
+    private final long _bottomMask;
+    private final long _boardMask;
+    private final long _oddRowsMask;
+
+    public BitboardGameState(int cols, int rows) {
+        super(cols, rows);
+        if(cols * (rows + 1) > 64)
+            throw new IllegalArgumentException("A board of " + cols + "x" + rows + " does not fit in a 64 bit bitboard.");
+
+        long bottomMask = 0;
+        for(int c = 0; c < cols; c++)
+            bottomMask |= 1L << (c * _height);
+        _bottomMask = bottomMask;
+        _boardMask = _bottomMask * ((1L << rows) - 1);
+        _oddRowsMask = _bottomMask * (0x5555555555555555L & ((1L << rows) - 1));
+    }
+
+    private BitboardGameState(BitboardGameState other) {
+        super(other);
+        _board = other._board;
+        _boardCoinColors = other._boardCoinColors;
+        _mirrorBoard = other._mirrorBoard;
+        _mirrorCoinColors = other._mirrorCoinColors;
+        _bottomMask = other._bottomMask;
+        _boardMask = other._boardMask;
+        _oddRowsMask = other._oddRowsMask;
+    }
+
+    @Override
+    public GameState copy() {
+        return new BitboardGameState(this);
+    }
+
+    @Override
+    protected void setCoin(int column, int row, int location, int playerId) {
+        int mirrorLocation = location + (_cols - 1 - 2*column)*_height;
+
+        _board |= (1L << location); // put coin on board
+        _mirrorBoard |= (1L << mirrorLocation);
+        if (playerId == 2)
+        {
+            _boardCoinColors |= (1L << location); // set coin color to 1
+            _mirrorCoinColors |= (1L << mirrorLocation);
+        } else {
+            _boardCoinColors &= ~(1L << location); // set coin color to 0
+            _mirrorCoinColors &= ~(1L << mirrorLocation);
+        }
+    }
+
+    @Override
+    protected void clearCoin(int column, int row, int location) {
+        int mirrorLocation = location + (_cols - 1 - 2*column)*_height;
+
+        _board &= ~(1L << location); // set location to 0
+        _boardCoinColors &= ~(1L << location); // set location to 0
+        _mirrorBoard &= ~(1L << mirrorLocation);
+        _mirrorCoinColors &= ~(1L << mirrorLocation);
+    }
+
+    @Override
+    public int getCoinPlayer(int column, int row) {
+        if ((_board & (1L << (column*_height+row) )) != 0)
+        {
+            // The bit was set
+            if ((_boardCoinColors & (1L << (column*_height+row) )) != 0)
+            {
+                // The bit was set
+                return 2;
+            }
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * @param playerId 1 or 2
+     * @return A bitboard with a bit set for every coin of the player.
+     */
+    public long getPlayerBoard(int playerId) {
+        return playerId == 2 ? _boardCoinColors : _board ^ _boardCoinColors;
+    }
+
+    /**
+     * @return A bitboard with a bit set for every coin on the board.
+     */
+    public long getOccupiedBoard() {
+        return _board;
+    }
+
+    /**
+     * Uses one shift-and-AND pair per direction.
+     */
+    @Override
+    public boolean hasFourInARow(int playerId) {
+        long coins = getPlayerBoard(playerId);
+
+        // Vertical
+        long m = coins & (coins >>> 1);
+        if((m & (m >>> 2)) != 0)
+            return true;
+
+        // Narrow boards have no other lines, and their columns are
+        // so tall that the shifts below would exceed 63 bits.
+        if(_cols < 4)
+            return false;
+
+        // Horizontal
+        m = coins & (coins >>> _height);
+        if((m & (m >>> (2 * _height))) != 0)
+            return true;
+
+        // Diagonal down to the right
+        m = coins & (coins >>> (_height - 1));
+        if((m & (m >>> (2 * (_height - 1)))) != 0)
+            return true;
+
+        // Diagonal up to the right
+        m = coins & (coins >>> (_height + 1));
+        return (m & (m >>> (2 * (_height + 1)))) != 0;
+    }
+
+    @Override
+    public int getWinningColumns(int playerId) {
+        long cells = getWinningCells(getPlayerBoard(playerId)) & ((_board + _bottomMask) & _boardMask);
+        int columns = 0;
+        while(cells != 0) {
+            columns |= 1 << (Long.numberOfTrailingZeros(cells) / _height);
+            cells &= cells - 1;
+        }
+        return columns;
+    }
+
+    /**
+     * @return The empty cells that would complete a four for the coins.
+     */
+    private long getWinningCells(long coins) {
+        if(_cols < 4)
+            return (coins << 1) & (coins << 2) & (coins << 3) & (_boardMask ^ _board);
+        return getLineCompletions(coins, _height) & (_boardMask ^ _board);
+    }
+
+    /**
+     * Only valid for boards of at least four columns.
+     * @param height Rows + 1, the distance between horizontal neighbours.
+     * @return The cells, empty or not and including the spare bits, that
+     *         would complete a four for the coins.
+     */
+    static long getLineCompletions(long coins, int height) {
+        // Vertical
+        long cells = (coins << 1) & (coins << 2) & (coins << 3);
+        cells |= getWinningCells(coins, height);
+        cells |= getWinningCells(coins, height - 1);
+        cells |= getWinningCells(coins, height + 1);
+        return cells;
+    }
+
+    /**
+     * @return The cells completing a line of four along the direction
+     *         given by the shift between neighbouring cells.
+     */
+    private static long getWinningCells(long coins, int shift) {
+        long cells = 0;
+        long pair = (coins << shift) & (coins << (2 * shift));
+        cells |= pair & (coins << (3 * shift));
+        cells |= pair & (coins >>> shift);
+        pair = (coins >>> shift) & (coins >>> (2 * shift));
+        cells |= pair & (coins << shift);
+        cells |= pair & (coins >>> (3 * shift));
+        return cells;
+    }
+
+    @Override
+    protected int getThreatScore() {
+        long threats1 = getWinningCells(getPlayerBoard(1));
+        long threats2 = getWinningCells(getPlayerBoard(2));
+
+        return threatScore(Long.bitCount(threats1 & _oddRowsMask), Long.bitCount(threats1 & ~_oddRowsMask),
+                Long.bitCount(threats2 & _oddRowsMask), Long.bitCount(threats2 & ~_oddRowsMask));
+    }
+
+    /**
+     * Adding the bottom row to the occupied cells moves every column's
+     * lowest empty bit one above its top coin, and the coin colors sit
+     * below that marker, so the key is unique for every position.
+     * @return A collision-free key of the board.
+     */
+    @Override
+    public long getPositionKey() {
+        return _board + _bottomMask + _boardCoinColors;
+    }
+
+    @Override
+    public long getMirrorPositionKey() {
+        return _mirrorBoard + _bottomMask + _mirrorCoinColors;
+    }
+
+    @Override
+    public boolean hasExactKeys() {
+        return true;
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * The board for sizes that do not fit in a single 64 bit bitboard, such as
+ * 8x8, 9x7 and 10x8. Every column has a long per player with bit r set for
+ * a coin in row r. Vertical lines are found by shifting a column word, the
+ * other directions by combining the words of four neighbouring columns,
+ * shifted by their distance for the diagonals.
+ *
+ * No unique key of these boards fits in a long, so the position keys are
+ * the Zobrist hashes kept by GameState.
+ */
+public class ColumnBitboardGameState extends GameState {
+    /** A column word needs room above the top row for the threat shifts. */
+    public static final int MAX_ROWS = 60;
+
+    private final long[][] _coins;
+    private final long _columnMask;
+    private final long _oddRowsMask;
+
+    public ColumnBitboardGameState(int cols, int rows) {
+        super(cols, rows);
+        if(rows > MAX_ROWS)
+            throw new IllegalArgumentException("Boards are limited to " + MAX_ROWS + " rows.");
+
+        _coins = new long[2][cols];
+        _columnMask = (1L << rows) - 1;
+        _oddRowsMask = 0x5555555555555555L & _columnMask;
+    }
+
+    private ColumnBitboardGameState(ColumnBitboardGameState other) {
+        super(other);
+        _coins = new long[][] {other._coins[0].clone(), other._coins[1].clone()};
+        _columnMask = other._columnMask;
+        _oddRowsMask = other._oddRowsMask;
+    }
+
+    @Override
+    public GameState copy() {
+        return new ColumnBitboardGameState(this);
+    }
+
+    @Override
+    protected void setCoin(int column, int row, int location, int playerId) {
+        _coins[playerId - 1][column] |= 1L << row;
+    }
+
+    @Override
+    protected void clearCoin(int column, int row, int location) {
+        _coins[0][column] &= ~(1L << row);
+        _coins[1][column] &= ~(1L << row);
+    }
+
+    @Override
+    public int getCoinPlayer(int column, int row) {
+        long bit = 1L << row;
+        if((_coins[0][column] & bit) != 0)
+            return 1;
+        if((_coins[1][column] & bit) != 0)
+            return 2;
+        return 0;
+    }
+
+    @Override
+    public boolean hasFourInARow(int playerId) {
+        long[] coins = _coins[playerId - 1];
+
+        // Vertical
+        for(int c = 0; c < _cols; c++) {
+            long m = coins[c] & (coins[c] >>> 1);
+            if((m & (m >>> 2)) != 0)
+                return true;
+        }
+
+        for(int c = 0; c + 3 < _cols; c++) {
+            long c0 = coins[c], c1 = coins[c + 1], c2 = coins[c + 2], c3 = coins[c + 3];
+            // Horizontal
+            if((c0 & c1 & c2 & c3) != 0)
+                return true;
+            // Diagonal up to the right
+            if((c0 & (c1 >>> 1) & (c2 >>> 2) & (c3 >>> 3)) != 0)
+                return true;
+            // Diagonal down to the right
+            if((c0 & (c1 << 1) & (c2 << 2) & (c3 << 3)) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int getWinningColumns(int playerId) {
+        long[] coins = _coins[playerId - 1];
+        int columns = 0;
+        for(int c = 0; c < _cols; c++) {
+            int row = getCoinsInColumn(c);
+            if(row < _rows && (getWinningCells(coins, c) & (1L << row)) != 0)
+                columns |= 1 << c;
+        }
+        return columns;
+    }
+
+    /**
+     * @return The cells of the column, empty or not, that would complete
+     *         a four for the coins.
+     */
+    private long getWinningCells(long[] coins, int column) {
+        // Vertical
+        long cells = (coins[column] << 1) & (coins[column] << 2) & (coins[column] << 3);
+
+        // The column is cell k of a line starting k columns to the left
+        for(int k = 0; k < 4; k++) {
+            int start = column - k;
+            if(start < 0 || start + 3 >= _cols)
+                continue;
+            long horizontal = -1, up = -1, down = -1;
+            for(int i = 0; i < 4; i++) {
+                if(i == k)
+                    continue;
+                long other = coins[start + i];
+                int distance = i - k;
+                horizontal &= other;
+                // Cells (column + distance, row + distance) and (column + distance, row - distance)
+                up &= distance > 0 ? other >>> distance : other << -distance;
+                down &= distance > 0 ? other << distance : other >>> -distance;
+            }
+            cells |= horizontal | up | down;
+        }
+        return cells & _columnMask;
+    }
+
+    @Override
+    protected int getThreatScore() {
+        int odd1 = 0, even1 = 0, odd2 = 0, even2 = 0;
+        for(int c = 0; c < _cols; c++) {
+            long empty = _columnMask & (-1L << getCoinsInColumn(c));
+            if(empty == 0)
+                continue;
+            long threats1 = getWinningCells(_coins[0], c) & empty;
+            long threats2 = getWinningCells(_coins[1], c) & empty;
+            odd1 += Long.bitCount(threats1 & _oddRowsMask);
+            even1 += Long.bitCount(threats1 & ~_oddRowsMask);
+            odd2 += Long.bitCount(threats2 & _oddRowsMask);
+            even2 += Long.bitCount(threats2 & ~_oddRowsMask);
+        }
+        return threatScore(odd1, even1, odd2, even2);
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ *
+ * Checks that the game logics keep to tiny move times. Two instances of
+ * every logic play the first moves of a game with each budget, and a
+ * decision that has not returned after TIMEOUT_SECONDS fails the check.
+ * Starting the search threads can spend such a budget before the search
+ * starts, so the logics run several threads, and SearchControl is checked
+ * with budgets that are already spent:
+ *
+ *     java DeadlineCheck [cols rows]
+ *
+ * Exits with 1 if any decision failed, so scripts can run it.
+ *
+ */
+
+
+import java.util.concurrent.*;
+
+public class DeadlineCheck
+{
+    private static final long[] BUDGETS_MS = {1, 2, 5};
+    private static final long[] SPENT_BUDGETS_MS = {0, -5};
+    private static final int MOVES = 8;
+    private static final int TIMEOUT_SECONDS = 20;
+
+    /**
+     * Valid arguments: [cols rows]
+     * standard values are 7 and 6
+     */
+    public static void main(String[] args) throws InterruptedException
+    {
+        int cols = 7;
+        int rows = 6;
+        try {
+            if(args.length >= 1) cols = Integer.parseInt(args[0]);
+            if(args.length >= 2) rows = Integer.parseInt(args[1]);
+        } catch(NumberFormatException nfe) {
+            printHelp("Could not parse number: " + nfe.getMessage());
+            System.exit(1);
+        }
+
+        setDefaultProperty("gamelogic.debug", "false");
+        setDefaultProperty("gamelogic.threads", "4");
+
+        ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "DeadlineCheck");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        boolean passed = true;
+        for(long budgetMs : SPENT_BUDGETS_MS)
+            passed &= checkControl(budgetMs);
+        for(long budgetMs : BUDGETS_MS) {
+            GameLogic[] alphaBeta = {new GameLogic(), new GameLogic()};
+            MctsGameLogic[] mcts = {new MctsGameLogic(), new MctsGameLogic()};
+            for(int i = 0; i < 2; i++) {
+                alphaBeta[i].setMoveTimeMs(budgetMs);
+                mcts[i].setMoveTimeMs(budgetMs);
+            }
+            passed &= check("GameLogic", alphaBeta, budgetMs, cols, rows, executor);
+            passed &= check("MctsGameLogic", mcts, budgetMs, cols, rows, executor);
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    public static void printHelp(String errMsg) {
+        if(!errMsg.equals("")) {
+            System.err.println(errMsg);
+        }
+        System.err.println("Usage: java DeadlineCheck [cols rows]");
+        System.err.println("\tcols/rows\t - Board size, defaults to 7 and 6.");
+    }
+
+    private static void setDefaultProperty(String key, String value) {
+        if(System.getProperty(key) == null)
+            System.setProperty(key, value);
+    }
+
+    /**
+     * @return false if the control did not stop soon after the budget.
+     */
+    private static boolean checkControl(long budgetMs) throws InterruptedException {
+        SearchControl control = new SearchControl();
+        control.startDeadline(budgetMs);
+        long start = System.nanoTime();
+        while(!control.isStopped() && System.nanoTime() - start < TIMEOUT_SECONDS * 1000000000L)
+            Thread.sleep(1);
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+        boolean passed = control.isStopped() && elapsedMs < 100;
+        System.out.format("%s SearchControl %d ms: stopped after %d ms%n", passed ? "ok  " : "FAIL", budgetMs, elapsedMs);
+        return passed;
+    }
+
+    /**
+     * Plays MOVES moves of a game between the two logics.
+     * @return false if a decision timed out or was not a legal move.
+     */
+    private static boolean check(String name, IGameLogic[] logics, long budgetMs, int cols, int rows,
+                                 ExecutorService executor) throws InterruptedException {
+        for(int i = 0; i < 2; i++)
+            logics[i].initializeGame(cols, rows, i + 1);
+        GameState state = GameState.create(cols, rows);
+        long maxMs = 0;
+        try {
+            for(int i = 0; i < MOVES; i++) {
+                final IGameLogic logic = logics[i % 2];
+                long start = System.nanoTime();
+                Future<Integer> decision = executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return logic.decideNextMove();
+                    }
+                });
+                int column;
+                try {
+                    column = decision.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch(TimeoutException e) {
+                    System.out.format("FAIL %s %d ms: no move after %d s%n", name, budgetMs, TIMEOUT_SECONDS);
+                    return false;
+                } catch(ExecutionException e) {
+                    System.out.format("FAIL %s %d ms: %s%n", name, budgetMs, e.getCause());
+                    return false;
+                }
+                maxMs = Math.max(maxMs, (System.nanoTime() - start) / 1000000);
+                if(column < 0 || column >= cols || state.getCoinsInColumn(column) >= rows) {
+                    System.out.format("FAIL %s %d ms: illegal move %d%n", name, budgetMs, column);
+                    return false;
+                }
+                state.addCoin(column, i % 2 + 1);
+                for(IGameLogic player : logics)
+                    player.insertCoin(column, i % 2 + 1);
+            }
+        } finally {
+            for(IGameLogic player : logics)
+                player.close();
+        }
+        System.out.format("ok   %s %d ms: %d ms max per move%n", name, budgetMs, maxMs);
+        return true;
+    }
+}
@@ -0,0 +1,290 @@
+/**
+ *
+ * Serves an IGameLogic over a socket, so a game can be played against it
+ * from another process:
+ *
+ *     java EngineServer GameLogic [address]
+ *
+ * The address is a TCP port on the loopback interface, host:port, or
+ * unix:path for a Unix domain socket. Every connection is a session with
+ * an engine of its own, one thread per session. The opening book and the
+ * solved table are mapped once and shared by all engines of the process.
+ * So that many sessions fit in the heap, engines default to 8 MB tables,
+ * one search thread and a small MCTS node pool; the gamelogic.* system
+ * properties override that, but the tables of one session are capped at
+ * an eighth of the heap.
+ *
+ * The protocol is one line per request and one per reply:
+ *
+ *     init cols rows player    ok
+ *     insert column player     ok
+ *     decide                   move column
+ *     finished                 winner PLAYER1|PLAYER2|TIE|NOT_FINISHED
+ *     quit                     bye, and the session ends
+ *
+ * Anything the engine can not do is answered with "error message" and
+ * leaves the session open. A board larger than GameState supports is
+ * refused before the engine allocates anything for it. If the engine can
+ * not be created at all, the session sends one error line and ends.
+ * RemoteGameLogic is the client.
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+public class EngineServer
+{
+    public static final int DEFAULT_PORT = 4444;
+    private static final int SESSIONS_PER_HEAP = 8;
+    /** The size of a node in MctsGameLogic's pool. */
+    private static final int MCTS_NODE_BYTES = 19;
+
+    private final String _logicClass;
+    private final SocketAddress _address;
+    private ServerSocketChannel _server;
+    private final ExecutorService _sessions = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Engine session");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Valid arguments: logic [address]
+     * standard address is port 4444 on the loopback interface
+     */
+    public static void main(String[] args)
+    {
+        if(args.length < 1) {
+            printHelp("");
+            System.exit(1);
+        }
+
+        SocketAddress address = null;
+        try {
+            address = parseAddress(args.length >= 2 ? args[1] : Integer.toString(DEFAULT_PORT));
+        } catch(IllegalArgumentException iae) {
+            printHelp(iae.getMessage());
+            System.exit(1);
+        }
+
+        // Read by the logics when they are loaded, unless given on the command line.
+        setDefaultProperty("gamelogic.debug", "false");
+        setDefaultProperty("gamelogic.ttMegabytes", "8");
+        setDefaultProperty("gamelogic.solverMegabytes", "8");
+        setDefaultProperty("gamelogic.threads", "1");
+        setDefaultProperty("gamelogic.mctsNodes", Integer.toString(1 << 18));
+        long sessionBytes = Runtime.getRuntime().maxMemory() / SESSIONS_PER_HEAP;
+        capProperty("gamelogic.ttMegabytes", Math.max(1, (sessionBytes >> 20) / 2));
+        capProperty("gamelogic.solverMegabytes", Math.max(1, (sessionBytes >> 20) / 2));
+        capProperty("gamelogic.mctsNodes", sessionBytes / MCTS_NODE_BYTES);
+
+        EngineServer server = new EngineServer(args[0], address);
+        try {
+            server.bind();
+            System.out.println("Serving " + args[0] + " on " + server.getAddress());
+            server.acceptSessions();
+        } catch(IOException e) {
+            printHelp(e.toString());
+            System.exit(1);
+        }
+    }
+
+    public static void printHelp(String errMsg) {
+        if(!errMsg.equals("")) {
+            System.err.println(errMsg);
+        }
+        System.err.println("Usage: java EngineServer GameLogic [address]");
+        System.err.println("\tGameLogic\t - A class implementing IGameLogic, one instance per session.");
+        System.err.println("\taddress\t - port, host:port or unix:path, defaults to port " + DEFAULT_PORT + " on the loopback interface.");
+    }
+
+    private static void setDefaultProperty(String key, String value) {
+        if(System.getProperty(key) == null)
+            System.setProperty(key, value);
+    }
+
+    private static void capProperty(String key, long max) {
+        Long value = Long.getLong(key);
+        if(value != null && value > max) {
+            System.err.println("Capping " + key + " at " + max + " so sessions fit in the heap.");
+            System.setProperty(key, Long.toString(max));
+        }
+    }
+
+    /**
+     * @param address port, host:port or unix:path
+     */
+    public static SocketAddress parseAddress(String address) {
+        if(address.startsWith("unix:"))
+            return UnixDomainSocketAddress.of(address.substring("unix:".length()));
+        try {
+            int colon = address.lastIndexOf(':');
+            if(colon < 0)
+                return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+            return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        } catch(NumberFormatException nfe) {
+            throw new IllegalArgumentException("Could not parse port: " + address);
+        }
+    }
+
+    /**
+     * @param logicClass The IGameLogic to create for every session, as given to ShowGame.
+     * @param address Where to listen. Port 0 picks a free port.
+     */
+    public EngineServer(String logicClass, SocketAddress address) {
+        _logicClass = logicClass;
+        _address = address;
+    }
+
+    /**
+     * Binds the socket and accepts sessions on a thread of its own.
+     */
+    public void start() throws IOException {
+        bind();
+        _sessions.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    acceptSessions();
+                } catch(IOException e) {
+                    // The server was closed
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The address the server listens on, with the actual port.
+     */
+    public SocketAddress getAddress() throws IOException {
+        return _server.getLocalAddress();
+    }
+
+    /**
+     * Stops accepting sessions. Running sessions end when their client disconnects.
+     */
+    public void close() throws IOException {
+        _server.close();
+        if(_address instanceof UnixDomainSocketAddress)
+            Files.deleteIfExists(((UnixDomainSocketAddress) _address).getPath());
+        _sessions.shutdown();
+    }
+
+    private synchronized void bind() throws IOException {
+        if(_server != null)
+            return;
+        if(_address instanceof UnixDomainSocketAddress) {
+            // A socket file left by a server that did not close
+            Path path = ((UnixDomainSocketAddress) _address).getPath();
+            Files.deleteIfExists(path);
+            _server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            _server = ServerSocketChannel.open();
+        }
+        _server.bind(_address);
+    }
+
+    private void acceptSessions() throws IOException {
+        try {
+            while(true) {
+                final SocketChannel channel = _server.accept();
+                _sessions.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(channel);
+                    }
+                });
+            }
+        } catch(ClosedChannelException e) {
+            // close() was called
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        IGameLogic logic = null;
+        try {
+            BufferedReader in = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), true);
+            try {
+                logic = ShowGame.parseGameLogicParam(_logicClass);
+            } catch(Exception e) {
+                out.println("error could not create " + _logicClass + ": " + e);
+                throw e;
+            }
+            if(logic == null) {
+                out.println("error humans can not be served");
+                return;
+            }
+
+            for(String line = in.readLine(); line != null; line = in.readLine()) {
+                String reply = handle(logic, line.trim().split("\\s+"));
+                out.println(reply);
+                if(reply.equals("bye"))
+                    break;
+            }
+        } catch(Exception e) {
+            System.err.println("Session ended: " + e);
+        } finally {
+            if(logic != null)
+                logic.close();
+            try {
+                channel.close();
+            } catch(IOException ignored) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    /**
+     * @return The reply to the request.
+     */
+    private static String handle(IGameLogic logic, String[] request) {
+        try {
+            if(request[0].equals("init") && request.length == 4) {
+                int cols = Integer.parseInt(request[1]);
+                int rows = Integer.parseInt(request[2]);
+                int player = Integer.parseInt(request[3]);
+                if(cols < 1 || cols > GameState.MAX_COLUMNS || rows < 1 || rows > ColumnBitboardGameState.MAX_ROWS)
+                    return "error boards are limited to " + GameState.MAX_COLUMNS + " columns and " + ColumnBitboardGameState.MAX_ROWS + " rows";
+                if(player != 1 && player != 2)
+                    return "error the player is 1 or 2";
+                logic.initializeGame(cols, rows, player);
+                return "ok";
+            }
+            if(request[0].equals("insert") && request.length == 3) {
+                logic.insertCoin(Integer.parseInt(request[1]), Integer.parseInt(request[2]));
+                return "ok";
+            }
+            if(request[0].equals("decide") && request.length == 1)
+                return "move " + logic.decideNextMove();
+            if(request[0].equals("finished") && request.length == 1)
+                return "winner " + logic.gameFinished();
+            if(request[0].equals("quit") && request.length == 1)
+                return "bye";
+            return "error unknown request: " + String.join(" ", request);
+        } catch(RuntimeException e) {
+            return "error " + e;
+        }
+    }
+}
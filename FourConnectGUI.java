@@ -1,10 +1,28 @@
+import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * You do not have to change anything in this file. 
  * The game moves are executed through calls to the methods mouseClicked(MouseEvent e) and run().
+ * Computer players decide their moves on a background thread, and the moves are
+ * applied on the event thread, so the window keeps painting while they think.
+ *
+ * The images are read once, scaled to a cell size that fits the board in the
+ * window, and composited into a cached frame of the whole board. A move only
+ * redraws its cell and the arrows into the frame and repaints that region;
+ * the frame is rebuilt when the window is resized.
+ *
+ * With the gamelogic.journal property set, the game is recorded in the
+ * journal with the class names of the players, or human.
  * 
  * @author Mai Ajspur
  * @version 1.2.2007
@@ -12,19 +30,37 @@ import java.awt.event.*;
 public class FourConnectGUI extends JComponent implements MouseListener
 {
     static final long 	serialVersionUID = 1234567890;
+    private static final int	IMAGE_SIZE = 100;	// The size of a cell in the images
+    private static final int	MIN_CELL_SIZE = 20;
+    private static final String	JOURNAL_FILE = System.getProperty("gamelogic.journal");
 	
     private int chosenColumn;	// The value of the last column chosen by the human player.
     private IGameLogic player1;
     private IGameLogic player2;
     private IGameLogic.Winner winner;
     private int playerTurn;
-    private int[][] gameBoard;
+    private final GameState state;	// The coins on the board, row 0 is the bottom row.
+    private final int cols, rows;
+    private boolean thinking;	// A computer player is deciding its move, only used on the event thread.
+    private final GameJournal.Recorder recorder = GameJournal.recorder(JOURNAL_FILE);	// null without a journal
+    private final ExecutorService moveExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+	    public Thread newThread(Runnable r) {
+		Thread thread = new Thread(r, "Computer move");
+		thread.setDaemon(true);
+		return thread;
+	    }
+	});
+
+    // Images for drawing the game board, as read from imgs
+    private BufferedImage 	part, redPion, bluePion, arrow, arrow_active, background;
+    private BufferedImage 	border_left,border_right,border_top,border_bottom;
+    private BufferedImage 	corner_left_top, corner_left_bottom,corner_right_top,corner_right_bottom;
+    private BufferedImage 	redWon, blueWon;
 
-    // Images for drawing the game board
-    private Image 		part, redPion, bluePion, arrow, arrow_active, background;
-    private Image 		border_left,border_right,border_top,border_bottom;
-    private Image 		corner_left_top, corner_left_bottom,corner_right_top,corner_right_bottom;
-    private Image 		redWon, blueWon;
+    // The board at the current cell size, and the tiles a move draws into it
+    private int 		cellSize;
+    private BufferedImage 	frame;
+    private BufferedImage 	emptyCell, redCell, blueCell, arrowTile, arrowActiveTile;
 	
     /**
      * @param player1 The implementation of the game logic for player1, ir null for human
@@ -34,110 +70,210 @@ public class FourConnectGUI extends JComponent implements MouseListener
      */
     public FourConnectGUI(IGameLogic player1, IGameLogic player2, int cols, int rows)
     {
-	part = Toolkit.getDefaultToolkit().getImage("imgs/maze.png");
-	redPion = Toolkit.getDefaultToolkit().getImage("imgs/redPion.png");
-	bluePion = Toolkit.getDefaultToolkit().getImage("imgs/bluePion.png");
-	arrow = Toolkit.getDefaultToolkit().getImage("imgs/arrow.png");
-	arrow_active = Toolkit.getDefaultToolkit().getImage("imgs/arrow_active.png");
-	background = Toolkit.getDefaultToolkit().getImage("imgs/background.png");
+	part = loadImage("maze.png");
+	redPion = loadImage("redPion.png");
+	bluePion = loadImage("bluePion.png");
+	arrow = loadImage("arrow.png");
+	arrow_active = loadImage("arrow_active.png");
+	background = loadImage("background.png");
 		
-	border_left = Toolkit.getDefaultToolkit().getImage("imgs/border_left.png");
-	border_right = Toolkit.getDefaultToolkit().getImage("imgs/border_right.png");
-	border_top = Toolkit.getDefaultToolkit().getImage("imgs/border_top.png");
-	border_bottom = Toolkit.getDefaultToolkit().getImage("imgs/border_bottom.png");
-	corner_left_top = Toolkit.getDefaultToolkit().getImage("imgs/corner_left_top.png");
-	corner_left_bottom = Toolkit.getDefaultToolkit().getImage("imgs/corner_left_bottom.png");
-	corner_right_top = Toolkit.getDefaultToolkit().getImage("imgs/corner_right_top.png");
-	corner_right_bottom = Toolkit.getDefaultToolkit().getImage("imgs/corner_right_bottom.png");
-
-	redWon = Toolkit.getDefaultToolkit().getImage("imgs/redwon.png");
-	blueWon = Toolkit.getDefaultToolkit().getImage("imgs/bluewon.png");
+	border_left = loadImage("border_left.png");
+	border_right = loadImage("border_right.png");
+	border_top = loadImage("border_top.png");
+	border_bottom = loadImage("border_bottom.png");
+	corner_left_top = loadImage("corner_left_top.png");
+	corner_left_bottom = loadImage("corner_left_bottom.png");
+	corner_right_top = loadImage("corner_right_top.png");
+	corner_right_bottom = loadImage("corner_right_bottom.png");
+
+	redWon = loadImage("redwon.png");
+	blueWon = loadImage("bluewon.png");
 		
 	chosenColumn = -1;
 	this.player1 = player1;
 	this.player2 = player2;
 	winner = IGameLogic.Winner.NOT_FINISHED;
 	playerTurn =1;
-	gameBoard = new int[cols][rows];
+	this.cols = cols;
+	this.rows = rows;
+	state = GameState.create(cols, rows);
+	if (recorder != null)
+	    recorder.start(cols, rows, playerName(player1), playerName(player2));
+	setDoubleBuffered(true);
+	setPreferredSize(new Dimension((cols+2)*IMAGE_SIZE, (rows+2)*IMAGE_SIZE));
 	this.addMouseListener(this);
+
+	// A computer player 1 starts without waiting for a click
+	SwingUtilities.invokeLater(new Runnable() {
+		public void run() {
+		    requestComputerMove();
+		}
+	    });
+    }
+
+    private static BufferedImage loadImage(String name){
+	try {
+	    BufferedImage image = ImageIO.read(new File("imgs", name));
+	    if (image == null)
+		throw new IOException("Unknown image format");
+	    return image;
+	} catch (IOException e) {
+	    throw new UncheckedIOException("Could not read imgs/" + name, e);
+	}
     }
 
     /*
-     * Draws the current game board and shows if someone won.
+     * Draws the cached board, rebuilt first if the cell size changed, and shows if someone won.
      */
-    public void paint(Graphics g){
-	this.setDoubleBuffered(true);
-	Insets in = getInsets();               
-	g.translate(in.left, in.top);            
-
-	//int[][] gameboard = logic.getGameBoard();
-	int cols = gameBoard.length;
-	int rows = gameBoard[0].length;
-		
+    protected void paintComponent(Graphics g){
+	Insets in = getInsets();
+	int size = Math.max(MIN_CELL_SIZE, Math.min(IMAGE_SIZE,
+		Math.min((getWidth() - in.left - in.right) / (cols+2), (getHeight() - in.top - in.bottom) / (rows+2))));
+	if (frame == null || size != cellSize)
+	    buildFrame(size);
+	g.drawImage(frame, in.left, in.top, null);
+
+	// The images are centered on the board at 100 pixels per cell
+	BufferedImage won = winner == IGameLogic.Winner.PLAYER1 ? blueWon
+	    : winner == IGameLogic.Winner.PLAYER2 ? redWon : null;
+	if (won != null)
+	    g.drawImage(won, in.left + (cols*IMAGE_SIZE/2-50)*cellSize/IMAGE_SIZE, in.top + (rows*IMAGE_SIZE/2+25)*cellSize/IMAGE_SIZE,
+			won.getWidth()*cellSize/IMAGE_SIZE, won.getHeight()*cellSize/IMAGE_SIZE, null);
+    }
+
+    /*
+     * Scales the tiles to the cell size and composites the borders, arrows and cells into the frame.
+     */
+    private void buildFrame(int size){
+	cellSize = size;
+	emptyCell = createTile(size, size, background, part);
+	blueCell = createTile(size, size, bluePion, part);
+	redCell = createTile(size, size, redPion, part);
+	arrowTile = createTile(size, size, border_top, null);
+	arrowActiveTile = createTile(size, size, border_top, null);
+	drawScaled(arrowTile, arrow, 0, size/10);
+	drawScaled(arrowActiveTile, arrow_active, 0, size/10);
+
+	frame = createBuffer((cols+2)*size, (rows+2)*size);
+	Graphics2D g = frame.createGraphics();
+	for (int r = 0; r < rows; r++){
+	    g.drawImage(createTile(size, size, border_left, null), 0, size+size*r, null);
+	    g.drawImage(createTile(size, size, border_right, null), cols*size+size, size+size*r, null);
+	}
+	BufferedImage bottom = createTile(size, size, border_bottom, null);
+	for (int c = 0; c < cols; c++)
+	    g.drawImage(bottom, size+size*c, rows*size+size, null);
+	g.drawImage(createTile(size, size, corner_left_top, null), 0, 0, null);
+	g.drawImage(createTile(size, size, corner_left_bottom, null), 0, rows*size+size, null);
+	g.drawImage(createTile(size, size, corner_right_top, null), size+size*cols, 0, null);
+	g.drawImage(createTile(size, size, corner_right_bottom, null), size+size*cols, rows*size+size, null);
 	for (int c = 0; c < cols; c++){
-	    for (int r = 0; r < rows; r++){
-		int player = gameBoard[c][r];
-		if(player == 0) // background
-		    g.drawImage(background, 100+100*c, 100+100*r, this);
-		else if (player == 2) // red = player2
-		    g.drawImage(redPion, 100+100*c, 100+100*r, this);
-		else // blue = player1
-		    g.drawImage(bluePion, 100+100*c, 100+100*r, this);
-		g.drawImage(part, 100+100*c, 100+100*r, this);
-		if(c == 0){
-		    g.drawImage(border_left, 0, 100+100*r, this); 
-		    g.drawImage(border_right, cols*100+100, 100+100*r, this); 
-		}
-	    }
-	    g.drawImage(border_top, 100+100*c, 0, this);
-	    if ( c == chosenColumn)
-		g.drawImage(arrow_active, 100+100*c, 10, this);
-	    else 
-		g.drawImage(arrow, 100+100*c, 10, this);
-	    g.drawImage(border_bottom, 100+100*c, rows*100+100, this);
+	    g.drawImage(c == chosenColumn ? arrowActiveTile : arrowTile, size+size*c, 0, null);
+	    for (int r = 0; r < rows; r++)
+		g.drawImage(cellTile(c, r), size+size*c, size+size*(rows-1-r), null);
 	}
-	g.drawImage(corner_left_top, 0, 0, this);
-	g.drawImage(corner_left_bottom, 0, rows*100+100, this);
-	g.drawImage(corner_right_top, 100+100*cols, 0, this);
-	g.drawImage(corner_right_bottom, 100+100*cols, rows*100+100, this);
-		
-	if (winner == IGameLogic.Winner.PLAYER1)
-	    g.drawImage(blueWon, cols*100/2-50, rows*100/2+25, this);
-	else if (winner == IGameLogic.Winner.PLAYER2)
-	    g.drawImage(redWon, cols*100/2-50, rows*100/2+25, this);
+	g.dispose();
+    }
+
+    /*
+     * @return An image of the size, in the screen's format once the component is shown.
+     */
+    private BufferedImage createBuffer(int width, int height){
+	GraphicsConfiguration gc = getGraphicsConfiguration();
+	if (gc == null)
+	    return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+	return gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+    }
+
+    /*
+     * @return The image scaled to the size, with the overlay, if not null, scaled on top of it.
+     */
+    private BufferedImage createTile(int width, int height, BufferedImage image, BufferedImage overlay){
+	BufferedImage tile = createBuffer(width, height);
+	drawScaled(tile, image, 0, 0);
+	if (overlay != null)
+	    drawScaled(tile, overlay, 0, 0);
+	return tile;
+    }
+
+    private void drawScaled(BufferedImage target, BufferedImage image, int x, int y){
+	Graphics2D g = target.createGraphics();
+	g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+	g.drawImage(image, x, y, image.getWidth()*cellSize/IMAGE_SIZE, image.getHeight()*cellSize/IMAGE_SIZE, null);
+	g.dispose();
+    }
+
+    /*
+     * Draws the cell into the frame and repaints its region.
+     * @param r The row counted from the bottom, as in GameState.
+     */
+    private void drawCell(int c, int r){
+	drawTile(cellTile(c, r), cellSize+cellSize*c, cellSize+cellSize*(rows-1-r));
+    }
+
+    private BufferedImage cellTile(int c, int r){
+	int player = state.getCoinPlayer(c, r);
+	return player == 0 ? emptyCell : player == 2 ? redCell : blueCell;
+    }
+
+    private void drawArrow(int c){
+	drawTile(c == chosenColumn ? arrowActiveTile : arrowTile, cellSize+cellSize*c, 0);
+    }
+
+    private void drawTile(BufferedImage tile, int x, int y){
+	if (frame == null)
+	    return;
+	Graphics2D g = frame.createGraphics();
+	g.setComposite(AlphaComposite.Src);
+	g.drawImage(tile, x, y, null);
+	g.dispose();
+	Insets in = getInsets();
+	repaint(in.left + x, in.top + y, cellSize, cellSize);
     }
 
     private int humanSelectedColumn(MouseEvent e){
-	if (e.getY() < 60){
-	    for (int x = 0; x < gameBoard.length; x++){ 
-		if (100 + x*100 <= e.getX() && e.getX() < 100 + (x+1)*100){
-		    chosenColumn = x;
-		}
-	    }
+	Insets in = getInsets();
+	int x = e.getX() - in.left;
+	if (cellSize > 0 && e.getY() - in.top < cellSize*6/10 && x >= cellSize && x < cellSize*(cols+1)){
+	    int previous = chosenColumn;
+	    chosenColumn = x/cellSize - 1;
+	    if (previous >= 0)
+		drawArrow(previous);
+	    drawArrow(chosenColumn);
 	}
 	return chosenColumn;
     }
 
+    /*
+     * Puts the coin in the column, if it has room, and draws it.
+     */
     private boolean updateBoard(int col, int player){
-        if(col == -1) {
+        if(col < 0 || col >= cols || state.getCoinsInColumn(col) >= rows) {
             return false;
         }
-        if (gameBoard[col][0] != 0) {
-            return false;
+        state.addCoin(col, player);
+        drawCell(col, state.getCoinsInColumn(col) - 1);
+        if (recorder != null) {
+            recorder.addMove(col);
+            if (state.hasFourInARow(player))
+                recorder.finish(player == 1 ? IGameLogic.Winner.PLAYER1 : IGameLogic.Winner.PLAYER2);
+            else if (state.isBoardFull())
+                recorder.finish(IGameLogic.Winner.TIE);
         }
-        int r = gameBoard[col].length-1;
-        while(gameBoard[col][r]!=0) r--;
-        gameBoard[col][r]=player;
         return true;
     }
 
+    private static String playerName(IGameLogic logic){
+	return logic == null ? ShowGame.HUMAN_CMD : logic.getClass().getSimpleName();
+    }
+
     /*
      * When it is the humans turn and he clicks on one of the arrows, the corresponding
      * column is chosen and the logic puts a token/coin in the column. Then the computer
      * player is prompted to make a move, which is done in a new thread.
      */
     public void mouseClicked(MouseEvent e){
-	if (winner == IGameLogic.Winner.NOT_FINISHED){
+	if (winner == IGameLogic.Winner.NOT_FINISHED && !thinking){
 	    int col=-1;
 	    if (playerTurn == 1) {
             if (player1==null){//human
@@ -148,21 +284,6 @@ public class FourConnectGUI extends JComponent implements MouseListener
                 playerTurn = 2;
                 }
             }
-            else{//computer
-                col = player1.decideNextMove();
-                if (updateBoard(col,1)){
-                    if (player2!=null) player2.insertCoin(col,1);
-                    player1.insertCoin(col,1);
-                    winner = player1.gameFinished();
-                    playerTurn = 2;
-                }
-                else{
-                    JOptionPane.showMessageDialog(this, 
-                                  "Player1 chose an invalid move, please debug!", 
-                                  "Invalid Move",
-                                  JOptionPane.ERROR_MESSAGE); 
-                }		
-            }
 	    } else{
             if (player2==null){//human
                 col=humanSelectedColumn(e);
@@ -172,26 +293,78 @@ public class FourConnectGUI extends JComponent implements MouseListener
                 playerTurn = 1;
                 }
             }
-            else{//computer
-                col = player2.decideNextMove();
-                if (updateBoard(col,2)){
-                if (player1!=null) player1.insertCoin(col,2);
-                player2.insertCoin(col,2);
-                winner = player2.gameFinished();
-                playerTurn = 1;
-                }
-                else{
-                JOptionPane.showMessageDialog(this,
-                                  "Player2 chose an invalid move, please debug!", 
-                                  "Invalid Move",
-                                  JOptionPane.ERROR_MESSAGE); 
-                }		
-            }
 	    }
+	    requestComputerMove();
+	}
+	if (winner != IGameLogic.Winner.NOT_FINISHED)
+	    repaint();
+    }
+
+    /*
+     * Lets the computer player whose turn it is decide its move on the move thread,
+     * so the event thread keeps painting. The move is applied on the event thread,
+     * after which the next computer move is requested, so computer players keep
+     * playing without clicks. Must be called on the event thread.
+     */
+    private void requestComputerMove(){
+	final IGameLogic logic = playerTurn == 1 ? player1 : player2;
+	if (winner != IGameLogic.Winner.NOT_FINISHED || logic == null || thinking)
+	    return;
+	thinking = true;
+	final int player = playerTurn;
+	moveExecutor.execute(new Runnable() {
+		public void run() {
+		    int col;
+		    try {
+			col = logic.decideNextMove();
+		    } catch (RuntimeException e) {
+			e.printStackTrace();
+			col = -1;
+		    }
+		    final int chosen = col;
+		    SwingUtilities.invokeLater(new Runnable() {
+			    public void run() {
+				computerMoved(player, chosen);
+			    }
+			});
+		}
+	    });
+    }
+
+    private void computerMoved(int player, int col){
+	thinking = false;
+	if (moveExecutor.isShutdown())
+	    return;	// The window was closed while the player was thinking
+	IGameLogic logic = player == 1 ? player1 : player2;
+	IGameLogic other = player == 1 ? player2 : player1;
+	if (updateBoard(col,player)){
+	    if (other!=null) other.insertCoin(col,player);
+	    logic.insertCoin(col,player);
+	    winner = logic.gameFinished();
+	    playerTurn = 3 - player;
+	    if (winner != IGameLogic.Winner.NOT_FINISHED)
+		repaint();
+	    requestComputerMove();
+	}
+	else{
+	    JOptionPane.showMessageDialog(this,
+					  "Player" + player + " chose an invalid move, please debug!",
+					  "Invalid Move",
+					  JOptionPane.ERROR_MESSAGE);
 	}
-	repaint();
     }
 		
+    /*
+     * Stops the move thread, records an unfinished game and releases the
+     * computer players, called when the window closes.
+     */
+    public void close(){
+	moveExecutor.shutdownNow();
+	if (recorder != null) recorder.finish(IGameLogic.Winner.NOT_FINISHED);
+	if (player1!=null) player1.close();
+	if (player2!=null) player2.close();
+    }
+
     // Not used methods from the interface of MouseListener 
     public void mouseEntered(MouseEvent e){}
     public void mouseExited(MouseEvent e){}
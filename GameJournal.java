@@ -0,0 +1,298 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An append-only file of played games, read back by GameJournalReader.
+ * The referees, Arena and FourConnectGUI, record the games they run
+ * through a Recorder when the gamelogic.journal system property names a
+ * file. They know both players and the result, so every game is in the
+ * journal once, with both names. The game logics record nothing, and a
+ * game against a RemoteGameLogic is recorded by the client's referee.
+ *
+ * The file holds a header and then one record per game:
+ *
+ *     int magic, int version
+ *     int length, byte cols, byte rows, byte result, byte 0, short moves
+ *     short length, byte name1[length], short length, byte name2[length]
+ *     move[moves], four bits each, high nibble first, eight on boards of more than 16 columns
+ *     short thinkMs[moves]
+ *
+ * where length is the size of the whole record and result is 0 for an
+ * unfinished game, 1 or 2 for the winner and 3 for a tie. The think time
+ * of a move is the time since the previous move, or since the start of the
+ * game, in milliseconds up to 65535.
+ *
+ * Next to it, file.index holds the offset of every BLOCK_GAMES-th record as
+ * a long, so a reader can start at any game without reading the ones
+ * before its block.
+ */
+public class GameJournal implements AutoCloseable {
+    public static final int BLOCK_GAMES = 1024;
+    static final int MAGIC = 0x4334474a; // "C4GJ"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 8;
+    static final int RECORD_HEADER_BYTES = 10;
+    private static final Map<String, GameJournal> SHARED = new HashMap<String, GameJournal>();
+
+    private final Path _file;
+    private final FileChannel _channel;
+    private final FileChannel _index;
+    private long _games;
+    private final ByteBuffer _indexEntry = ByteBuffer.allocate(8);
+
+    private GameJournal(Path file) throws IOException {
+        _file = file;
+        _channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        _index = FileChannel.open(indexFile(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            recover();
+        } catch(IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the journal for appending, creating it if needed.
+     */
+    public static GameJournal open(Path file) throws IOException {
+        return new GameJournal(file);
+    }
+
+    /**
+     * Opens each file once per process, so every game logic appends to the same journal.
+     * @return The journal, or null if the file can not be opened.
+     */
+    public static synchronized GameJournal shared(String file) {
+        if(!SHARED.containsKey(file)) {
+            GameJournal journal = null;
+            try {
+                journal = open(Paths.get(file));
+            } catch(IOException e) {
+                System.err.println("Could not open " + file + ": " + e.getMessage());
+            }
+            SHARED.put(file, journal);
+        }
+        return SHARED.get(file);
+    }
+
+    /**
+     * @param file The journal, or null for none.
+     * @return A recorder on the shared journal, or null if there is none.
+     */
+    public static Recorder recorder(String file) {
+        GameJournal journal = file == null ? null : shared(file);
+        return journal == null ? null : new Recorder(journal);
+    }
+
+    static Path indexFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".index");
+    }
+
+    /**
+     * Writes the header of a new file, or counts the games of an existing
+     * one from its last indexed block. A record cut short by a crash is
+     * cut off, and so are index entries beyond the end.
+     */
+    private void recover() throws IOException {
+        if(_channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(_channel, header, 0);
+            _index.truncate(0);
+            return;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(_channel, header, 0);
+        if(header.getInt(0) != MAGIC)
+            throw new IOException("Not a game journal file.");
+        if(header.getInt(4) != VERSION)
+            throw new IOException("Unsupported game journal version " + header.getInt(4) + ".");
+
+        long size = _channel.size();
+        long blocks = _index.size() / 8;
+        long offset = HEADER_BYTES;
+        ByteBuffer entry = ByteBuffer.allocate(8);
+        while(blocks > 0) {
+            entry.clear();
+            readFully(_index, entry, (blocks - 1) * 8);
+            offset = entry.getLong(0);
+            if(offset >= HEADER_BYTES && offset < size)
+                break;
+            blocks--;
+        }
+        if(blocks == 0)
+            offset = HEADER_BYTES;
+        _index.truncate(blocks * 8);
+        _games = Math.max(0, blocks - 1) * BLOCK_GAMES;
+
+        ByteBuffer length = ByteBuffer.allocate(4);
+        while(offset + RECORD_HEADER_BYTES <= size) {
+            length.clear();
+            readFully(_channel, length, offset);
+            int recordLength = length.getInt(0);
+            if(recordLength < RECORD_HEADER_BYTES || offset + recordLength > size)
+                break;
+            if(_games % BLOCK_GAMES == 0 && _games / BLOCK_GAMES >= blocks)
+                writeIndexEntry(offset);
+            offset += recordLength;
+            _games++;
+        }
+        _channel.truncate(offset);
+    }
+
+    /**
+     * Appends one record, encoded by a Recorder.
+     */
+    synchronized void append(ByteBuffer record) throws IOException {
+        long offset = _channel.size();
+        if(_games % BLOCK_GAMES == 0)
+            writeIndexEntry(offset);
+        writeFully(_channel, record, offset);
+        _games++;
+    }
+
+    private void writeIndexEntry(long offset) throws IOException {
+        _indexEntry.clear();
+        _indexEntry.putLong(0, offset);
+        writeFully(_index, _indexEntry, _games / BLOCK_GAMES * 8);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if(read < 0)
+                throw new IOException("Game journal file is truncated.");
+            position += read;
+        }
+    }
+
+    public synchronized long getGameCount() {
+        return _games;
+    }
+
+    public Path getFile() {
+        return _file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            _channel.close();
+        } finally {
+            _index.close();
+        }
+    }
+
+    /**
+     * Collects the moves of one game at a time and appends the game to the
+     * journal when it ends. A game logic keeps one for all its games, so
+     * recording a move allocates nothing.
+     */
+    public static class Recorder {
+        private final GameJournal _journal;
+        private final byte[] _moves = new byte[GameState.MAX_COLUMNS * ColumnBitboardGameState.MAX_ROWS];
+        private final short[] _thinkMs = new short[_moves.length];
+        private ByteBuffer _record = ByteBuffer.allocate(1024);
+        private int _cols;
+        private int _rows;
+        private byte[] _name1;
+        private byte[] _name2;
+        private int _moveCount;
+        private long _lastMoveNanos;
+        private boolean _recording;
+
+        public Recorder(GameJournal journal) {
+            _journal = journal;
+        }
+
+        /**
+         * Starts a new game. A game still being recorded is written as unfinished.
+         * @param player1 The name of player 1, such as the class of its logic.
+         */
+        public void start(int cols, int rows, String player1, String player2) {
+            if(_recording)
+                finish(IGameLogic.Winner.NOT_FINISHED);
+            if(cols > 255 || cols * rows > _moves.length)
+                throw new IllegalArgumentException("Games on a " + cols + "x" + rows + " board can not be recorded.");
+            _cols = cols;
+            _rows = rows;
+            _name1 = player1.getBytes(StandardCharsets.UTF_8);
+            _name2 = player2.getBytes(StandardCharsets.UTF_8);
+            _moveCount = 0;
+            _lastMoveNanos = System.nanoTime();
+            _recording = true;
+        }
+
+        public void addMove(int column) {
+            if(!_recording)
+                return;
+            long now = System.nanoTime();
+            _moves[_moveCount] = (byte) column;
+            _thinkMs[_moveCount] = (short) Math.min(65535, (now - _lastMoveNanos) / 1000000);
+            _moveCount++;
+            _lastMoveNanos = now;
+        }
+
+        public boolean isRecording() {
+            return _recording;
+        }
+
+        /**
+         * Appends the game to the journal. Failures are reported on stderr,
+         * a journal is not worth stopping a game for.
+         */
+        public void finish(IGameLogic.Winner result) {
+            if(!_recording)
+                return;
+            _recording = false;
+            int moveBytes = _cols <= 16 ? (_moveCount + 1) / 2 : _moveCount;
+            int length = RECORD_HEADER_BYTES + 4 + _name1.length + _name2.length + moveBytes + 2 * _moveCount;
+            if(_record.capacity() < length)
+                _record = ByteBuffer.allocate(2 * length);
+
+            _record.clear();
+            _record.putInt(length);
+            _record.put((byte) _cols).put((byte) _rows).put(resultCode(result)).put((byte) 0);
+            _record.putShort((short) _moveCount);
+            _record.putShort((short) _name1.length).put(_name1);
+            _record.putShort((short) _name2.length).put(_name2);
+            if(_cols <= 16) {
+                for(int i = 0; i < _moveCount; i += 2)
+                    _record.put((byte) (_moves[i] << 4 | (i + 1 < _moveCount ? _moves[i + 1] : 0)));
+            } else {
+                _record.put(_moves, 0, _moveCount);
+            }
+            for(int i = 0; i < _moveCount; i++)
+                _record.putShort(_thinkMs[i]);
+            _record.flip();
+            try {
+                _journal.append(_record);
+            } catch(IOException e) {
+                System.err.println("Could not write to " + _journal.getFile() + ": " + e.getMessage());
+            }
+        }
+
+        private static byte resultCode(IGameLogic.Winner result) {
+            switch(result) {
+                case PLAYER1: return 1;
+                case PLAYER2: return 2;
+                case TIE: return 3;
+                default: return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ *
+ * Reads a journal written by GameJournal, memory-mapped and one game at a
+ * time, without allocating per game. As a program it prints the games in
+ * the format BatchAnalyzer reads, so recorded games can be scored:
+ *
+ *     java GameJournalReader file [first count] | java BatchAnalyzer 10
+ *
+ * and a summary of the results and think times on stderr.
+ *
+ */
+
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class GameJournalReader
+{
+    private final MappedByteBuffer _buffer;
+    private final long[] _blocks;
+    private final int _size;
+    private long _game = -1;
+    private int _offset;
+    private int _next = GameJournal.HEADER_BYTES;
+    private int _cols;
+    private int _rows;
+    private int _moveCount;
+    private int _movesOffset;
+    private int _thinkOffset;
+
+    /**
+     * Valid arguments: file [first count]
+     * standard values are all games
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 1) {
+            printHelp("");
+            System.exit(1);
+        }
+
+        long first = 0;
+        long count = Long.MAX_VALUE;
+        try {
+            if(args.length >= 2) first = Long.parseLong(args[1]);
+            if(args.length >= 3) count = Long.parseLong(args[2]);
+        } catch(NumberFormatException nfe) {
+            printHelp("Could not parse number: " + nfe.getMessage());
+            System.exit(1);
+        }
+
+        GameJournalReader reader = open(Paths.get(args[0]));
+        long games = 0;
+        long[] results = new long[4];
+        long moves = 0;
+        long thinkMs = 0;
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII));
+        reader.seek(first);
+        while(games < count && reader.next()) {
+            for(int i = 0; i < reader.getMoveCount(); i++) {
+                out.write(Character.forDigit(reader.getMove(i), 36));
+                thinkMs += reader.getThinkTimeMs(i);
+            }
+            out.write('\n');
+            results[reader.getResult().ordinal()]++;
+            moves += reader.getMoveCount();
+            games++;
+        }
+        out.flush();
+        System.err.format("%d games: %d won by player 1, %d by player 2, %d ties, %d unfinished, %.1f ms per move%n",
+                games, results[IGameLogic.Winner.PLAYER1.ordinal()], results[IGameLogic.Winner.PLAYER2.ordinal()],
+                results[IGameLogic.Winner.TIE.ordinal()], results[IGameLogic.Winner.NOT_FINISHED.ordinal()],
+                (double) thinkMs / Math.max(1, moves));
+    }
+
+    public static void printHelp(String errMsg) {
+        if(!errMsg.equals("")) {
+            System.err.println(errMsg);
+        }
+        System.err.println("Usage: java GameJournalReader file [first count]");
+        System.err.println("\tfile\t - A journal written with the gamelogic.journal property.");
+        System.err.println("\tfirst/count\t - The games to print, from 0, defaults to all.");
+    }
+
+    private GameJournalReader(MappedByteBuffer buffer, long[] blocks) throws IOException {
+        if(buffer.capacity() < GameJournal.HEADER_BYTES || buffer.getInt(0) != GameJournal.MAGIC)
+            throw new IOException("Not a game journal file.");
+        if(buffer.getInt(4) != GameJournal.VERSION)
+            throw new IOException("Unsupported game journal version " + buffer.getInt(4) + ".");
+        _buffer = buffer;
+        _blocks = blocks;
+        _size = buffer.capacity();
+    }
+
+    /**
+     * Maps the journal as it is now. Games appended later are not seen.
+     */
+    public static GameJournalReader open(Path file) throws IOException {
+        long[] blocks = new long[0];
+        Path index = GameJournal.indexFile(file);
+        if(Files.isReadable(index)) {
+            ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(index));
+            blocks = new long[entries.capacity() / 8];
+            entries.asLongBuffer().get(blocks);
+        }
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Game journals are limited to 2 GB.");
+            // The mapping stays valid after the channel is closed.
+            return new GameJournalReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), blocks);
+        }
+    }
+
+    /**
+     * Moves to the next game.
+     * @return false at the end of the journal.
+     */
+    public boolean next() {
+        if(_next + GameJournal.RECORD_HEADER_BYTES > _size)
+            return false;
+        int length = _buffer.getInt(_next);
+        if(length < GameJournal.RECORD_HEADER_BYTES || length > _size - _next)
+            return false;
+
+        _offset = _next;
+        _next += length;
+        _game++;
+        _cols = _buffer.get(_offset + 4) & 0xff;
+        _rows = _buffer.get(_offset + 5) & 0xff;
+        _moveCount = _buffer.getShort(_offset + 8) & 0xffff;
+        int names = _offset + GameJournal.RECORD_HEADER_BYTES;
+        names += 2 + (_buffer.getShort(names) & 0xffff);
+        _movesOffset = names + 2 + (_buffer.getShort(names) & 0xffff);
+        _thinkOffset = _movesOffset + (_cols <= 16 ? (_moveCount + 1) / 2 : _moveCount);
+        return true;
+    }
+
+    /**
+     * Positions the reader so next() reads the game, counted from 0. Jumps
+     * to the game's block through the index and skips the games before it.
+     */
+    public void seek(long game) {
+        // Entry k of the index is the offset of game k * BLOCK_GAMES
+        int block = (int) Math.min(game / GameJournal.BLOCK_GAMES, _blocks.length - 1);
+        while(block >= 0 && (_blocks[block] < GameJournal.HEADER_BYTES || _blocks[block] >= _size))
+            block--;
+        _game = block < 0 ? -1 : (long) block * GameJournal.BLOCK_GAMES - 1;
+        _next = block < 0 ? GameJournal.HEADER_BYTES : (int) _blocks[block];
+        while(_game + 1 < game && next()) {
+            // Skip to the game
+        }
+    }
+
+    /**
+     * @return The number of the current game, counted from 0.
+     */
+    public long getGame() {
+        return _game;
+    }
+
+    public int getColumnCount() {
+        return _cols;
+    }
+
+    public int getRowCount() {
+        return _rows;
+    }
+
+    public int getMoveCount() {
+        return _moveCount;
+    }
+
+    /**
+     * @return The column of the move, counted from 0.
+     */
+    public int getMove(int move) {
+        if(_cols > 16)
+            return _buffer.get(_movesOffset + move);
+        int pair = _buffer.get(_movesOffset + move / 2);
+        return move % 2 == 0 ? (pair >> 4) & 0xf : pair & 0xf;
+    }
+
+    /**
+     * @return The milliseconds the player took for the move, at most 65535.
+     */
+    public int getThinkTimeMs(int move) {
+        return _buffer.getShort(_thinkOffset + 2 * move) & 0xffff;
+    }
+
+    public IGameLogic.Winner getResult() {
+        switch(_buffer.get(_offset + 6)) {
+            case 1: return IGameLogic.Winner.PLAYER1;
+            case 2: return IGameLogic.Winner.PLAYER2;
+            case 3: return IGameLogic.Winner.TIE;
+            default: return IGameLogic.Winner.NOT_FINISHED;
+        }
+    }
+
+    /**
+     * Decodes the name, so unlike the other getters it allocates.
+     * @param playerId 1 or 2
+     * @return The name the game logic recorded, or "" if it was not known.
+     */
+    public String getPlayer(int playerId) {
+        int name = _offset + GameJournal.RECORD_HEADER_BYTES;
+        if(playerId == 2)
+            name += 2 + (_buffer.getShort(name) & 0xffff);
+        byte[] bytes = new byte[_buffer.getShort(name) & 0xffff];
+        _buffer.get(name + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Plays the moves of the current game on the state, which should be an
+     * empty board of the game's size, players alternating from player 1.
+     */
+    public void replay(GameState state) {
+        for(int i = 0; i < _moveCount; i++)
+            state.addCoin(getMove(i), i % 2 + 1);
+    }
+}
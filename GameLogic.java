@@ -1,7 +1,7 @@
 import javax.naming.OperationNotSupportedException;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.concurrent.*;
+import java.util.List;
 
 public class GameLogic implements IGameLogic {
     private int _cols = 0;
@@ -10,13 +10,95 @@ public class GameLogic implements IGameLogic {
     private int _playerId;
     private int _otherPlayerId;
     private int _prevCutoff = 1;
-    private int _cutoff;
-    private static final boolean DEBUG = true;
-    private static final int MAX_DECISION_TIME_MS = 9900;
-    private HashMap<Long,Double> _memoizationTable;
+    private static final boolean DEBUG = Boolean.parseBoolean(System.getProperty("gamelogic.debug", "true"));
+    private static final int DEFAULT_MOVE_TIME_MS = 9900;
+    private long _moveTimeMs = Long.getLong("gamelogic.moveTimeMs", DEFAULT_MOVE_TIME_MS);
+    private static final int TABLE_MEGABYTES = Integer.getInteger("gamelogic.ttMegabytes", 64);
+    private TranspositionTable _transpositionTable;
+    private static final String BOOK_FILE = System.getProperty("gamelogic.book", "opening.book");
+    private OpeningBook _openingBook;
+    private static final String NETWORK_FILE = System.getProperty("gamelogic.network", "ntuple.weights");
+    private static final String POSITION_CACHE_FILE = System.getProperty("gamelogic.positionCache");
+    private static final int CACHE_MEGABYTES = Integer.getInteger("gamelogic.cacheMegabytes", 16);
+    private PositionCache _positionCache;
+    private static final String SOLVED_TABLE_FILE = System.getProperty("gamelogic.solvedTable", "solved.table");
+    private boolean _solverEnabled = Boolean.parseBoolean(System.getProperty("gamelogic.solver", "true"));
+    // About a second or less for the solver on 7x6, see solverReaches()
+    private static final int SOLVER_EMPTY_CELLS = Integer.getInteger("gamelogic.solverEmptyCells", 32);
+    private static final int SOLVER_MEGABYTES = Integer.getInteger("gamelogic.solverMegabytes", 16);
+    private Solver _solver;
+    private TranspositionTable _solverTable;
+    private int _solvedMove;
+    private int _solvedScore;
+    private int _threadCount = Integer.getInteger("gamelogic.threads", Runtime.getRuntime().availableProcessors());
+    private SearchScheduler _scheduler;
+    private final SearchControl _control = new SearchControl();
+    private boolean _ponderEnabled = Boolean.parseBoolean(System.getProperty("gamelogic.ponder", "false"));
+    private List<Search> _ponderSearches;
+    private int _ponderReply;
+    private int _ponderMove;
+    private int _ponderCutoff;
+    private boolean _ponderHit;
+    private long _ponderNodes;
+    private int _bestMove;
+    private int _bestCutoff;
+    private int _partialMove;
+    private int _partialCutoff;
+    private TimeManager _timeManager;
+    private long _startTime;
+    private SearchStats _stats;
+    private SearchStats _lastStats;
 
     public GameLogic() {
-        //TODO Write your implementation for this method
+        SearchStats.loadEvents();
+    }
+
+    /**
+     * Sets how many threads search in parallel in decideNextMove().
+     * Defaults to the gamelogic.threads system property or the number of cores.
+     */
+    public void setThreadCount(int threads) {
+        if(threads < 1)
+            throw new IllegalArgumentException("At least one search thread is needed.");
+        _threadCount = threads;
+    }
+
+    /**
+     * Sets the time decideNextMove() may take. Defaults to the
+     * gamelogic.moveTimeMs system property or 9900 ms.
+     */
+    public void setMoveTimeMs(long moveTimeMs) {
+        if(moveTimeMs < 1)
+            throw new IllegalArgumentException("The move time must be positive.");
+        _moveTimeMs = moveTimeMs;
+    }
+
+    /**
+     * Turns the exact solver on or off. When on, decideNextMove() runs it
+     * next to the heuristic search in positions it can likely solve, and
+     * plays its move if it finishes in time. Defaults to the
+     * gamelogic.solver system property or true.
+     */
+    public void setSolverEnabled(boolean enabled) {
+        _solverEnabled = enabled;
+    }
+
+    /**
+     * Turns pondering on or off. When on, the engine keeps searching on the
+     * opponent's time, see insertCoin(). Defaults to the gamelogic.ponder
+     * system property or false.
+     */
+    public void setPonderEnabled(boolean enabled) {
+        _ponderEnabled = enabled;
+        if(!enabled)
+            stopPondering(-1);
+    }
+
+    /**
+     * @return The counters of the last decideNextMove(), or null before the first.
+     */
+    public SearchStats getLastSearchStats() {
+        return _lastStats;
     }
 
     /**
@@ -27,300 +109,400 @@ public class GameLogic implements IGameLogic {
      * @param playerId 1 = blue (player1), 2 = red (player2)
      */
     public void initializeGame(int x, int y, int playerId) {
+        stopPondering(-1);
+        _ponderHit = false;
         _cols = x;
         _rows = y;
         _playerId = playerId;
         _otherPlayerId = playerId == 1 ? 2 : 1;
-        _state = new GameState(x, y);
-        _memoizationTable = new HashMap<Long, Double>();
-
+        _state = GameState.create(x, y);
+        // Searches copy the state, and the network's evaluation with it.
+        NTupleNetwork network = NTupleNetwork.shared(NETWORK_FILE);
+        if(network != null && network.fits(x, y))
+            _state.setNetwork(network);
+        else
+            network = null;
+        // Scores depend on the network, so the cache is only used with the one it was filled with.
+        _positionCache = null;
+        if(POSITION_CACHE_FILE != null && _state.hasExactKeys())
+            _positionCache = PositionCache.shared(POSITION_CACHE_FILE, x, y, network != null ? network.getChecksum() : 0, CACHE_MEGABYTES);
+        if(_transpositionTable == null)
+            _transpositionTable = new TranspositionTable(TABLE_MEGABYTES);
+        else
+            _transpositionTable.clear();
+        _openingBook = OpeningBook.shared(BOOK_FILE);
+        if(_openingBook != null && !_openingBook.fits(x, y))
+            _openingBook = null;
+
+        // Solved positions stay valid, so the solver and its table are kept between games.
+        if(_solver != null && !_solver.fits(x, y))
+            _solver = null;
     }
 
     /**
-     * Checks if any of the two players have 4-in-a-row.
-     * @return
+     * Creates the solver and its table on first use.
+     * @return true if the solver is worth a thread: the position has at
+     *         most gamelogic.solverEmptyCells empty cells, 32 by default,
+     *         or the solved table has it.
      */
-    public Winner gameFinished() {
-        int column = _state.getColumnOfPreviouslyPlacedCoin();
-        if(column >= 0) {
-            if(connectedNeighbors(column) >= 4) {
-                int row = _state.getCoinsInColumn(column) - 1;
-                int playerId = _state.getCoinPlayer(column, row);
-                return playerId == 1 ? Winner.PLAYER1 : Winner.PLAYER2;
-            }
-            if(_state.isBoardFull())
-                return Winner.TIE;
+    private boolean solverReaches() {
+        if(!Solver.supports(_cols, _rows))
+            return false;
+        MappedPositionTable solvedTable = MappedPositionTable.shared(SOLVED_TABLE_FILE);
+        boolean solved = solvedTable != null && solvedTable.fits(_cols, _rows)
+                && _state.getCoinCount() <= solvedTable.getPlies();
+        if(!solved && _cols * _rows - _state.getCoinCount() > SOLVER_EMPTY_CELLS)
+            return false;
+        if(_solver == null) {
+            if(_solverTable == null)
+                _solverTable = new TranspositionTable(SOLVER_MEGABYTES);
+            else
+                _solverTable.clear();
+            _solver = new Solver(_cols, _rows, _solverTable, solvedTable, _control);
         }
-
-        return Winner.NOT_FINISHED;
-    }
-
-    private int connectedNeighbors(int column) {
-        int row = _state.getCoinsInColumn(column) - 1;
-        if(row < 0)
-            return 0;
-        int player = _state.getCoinPlayer(column, row);
-        if(player == 0)
-            throw new RuntimeException("invalid player id");
-
-        return connectedNeighbors(column, row, player);
+        return true;
     }
 
-    private int connectedNeighbors(int c, int r, int playerId) {
-        if(_state.getCoinPlayer(c,r) != playerId)
-            return 0;
-
-        int count = 0;
-        int deepestRow = Math.max(0, r - 3);
-
-        // Horizontal
-        int tmp = 0;
-        for(int i = c+1 ;i < _cols && _state.getCoinPlayer(i, r) == playerId; i++)
-            tmp++;
-        for(int i = c-1; i >= 0 && _state.getCoinPlayer(i, r) == playerId; i--)
-            tmp++;
-        count = Math.max(tmp, count);
-
-        // Vertical
-        tmp = 0;
-        for(int j = r-1; j >= deepestRow && _state.getCoinPlayer(c, j) == playerId; j--)
-            tmp++;
-        count = Math.max(tmp, count);
-
-        // Diagonal left
-        tmp = 0;
-        for(int i = c-1, j = r-1; i >= 0 && j >= deepestRow && _state.getCoinPlayer(i, j) == playerId; i--, j--)
-            tmp++;
-        count = Math.max(tmp, count);
-
-        // Diagonal right
-        tmp = 0;
-        for(int i = c+1, j = r-1; i < _cols && j >= deepestRow && _state.getCoinPlayer(i, j) == playerId; i++, j--)
-            tmp++;
-        count = Math.max(tmp, count);
-
-        return 1 + count;
-    }
-
-    private int totalConnectedNeightboors(int column) {
-        int row = _state.getCoinsInColumn(column) - 1;
-        if(row < 0)
-            return 0;
-        int player = _state.getCoinPlayer(column, row);
-
-        return totalConnectedNeightboors(column, row, player);
+    /**
+     * Stops pondering and ends the search threads. The logic starts new
+     * threads if it is used again. The position cache is written to the disk.
+     */
+    @Override
+    public void close() {
+        stopPondering(-1);
+        if(_scheduler != null) {
+            _scheduler.close();
+            _scheduler = null;
+        }
+        if(_positionCache != null)
+            _positionCache.force();
     }
 
-    private int totalConnectedNeightboors(int c, int r, int playerId) {
-        if(_state.getCoinPlayer(c,r) != playerId)
-            return 0;
-
-        int count = 1;
-        int deepestRow = Math.max(0, r - 3);
-
-        // Horizontal
-        for(int i = c+1 ;i < _cols && _state.getCoinPlayer(i, r) == playerId; i++)
-            count++;
-        for(int i = c-1; i >= 0 && _state.getCoinPlayer(i, r) == playerId; i--)
-            count++;
-
-        // Vertical
-        for(int j = r-1; j >= deepestRow && _state.getCoinPlayer(c, j) == playerId; j--)
-            count++;
-
-        // Diagonal left
-        for(int i = c-1, j = r-1; i >= 0 && j >= deepestRow && _state.getCoinPlayer(i, j) == playerId; i--, j--)
-            count++;
-
-        // Diagonal right
-        for(int i = c+1, j = r-1; i < _cols && j >= deepestRow && _state.getCoinPlayer(i, j) == playerId; i++, j--)
-            count++;
+    /**
+     * Checks if any of the two players have 4-in-a-row.
+     * @return
+     */
+    public Winner gameFinished() {
+        if(_state.hasFourInARow(1))
+            return Winner.PLAYER1;
+        if(_state.hasFourInARow(2))
+            return Winner.PLAYER2;
+        if(_state.isBoardFull())
+            return Winner.TIE;
 
-        return count;
+        return Winner.NOT_FINISHED;
     }
 
     /**
      * Notifies that a token/coin is put in the specified column of the
      * game board.
+     *
+     * With pondering on, our own move starts a search of the position
+     * after the opponent's most likely reply, and the opponent's move
+     * stops it. If the opponent played the predicted reply, the next
+     * decideNextMove() continues from the depth the ponder search reached,
+     * and either way the ponder search has filled the transposition table.
      * @param column The column where the coin is inserted.
      * @param playerId The ID of the current player.
      */
     public void insertCoin(int column, int playerId) {
+        if(playerId != _playerId)
+            stopPondering(column);
         _state.addCoin(column, playerId);
-        _state.printBoard();
+        if(playerId == _playerId)
+            startPondering();
     }
 
     /**
      * Calculates the next move This is where you should implement/call
      * your heuristic evaluation functions etc.
+     *
+     * Runs one iterative deepening search per thread on a shared
+     * transposition table (Lazy SMP). Every other thread starts one ply
+     * deeper so the threads spread over two depths and fill the table for
+     * each other; the deepest completed iteration decides the move, or a
+     * deeper one that was stopped after it searched the previous best move.
+     * A TimeManager stops the search when the next iteration is unlikely to
+     * finish or not needed.
+     * Positions in the opening book are answered without a search. When
+     * the solver can likely solve the position it runs in one more thread,
+     * and its move is played if it solves the position before the time is up.
      * @return
      */
     public int decideNextMove() {
+        stopPondering(-1);
         long startTime = new Date().getTime();
-        int result = 0;
-        _cutoff = _prevCutoff;
-        _state.resetUndoStack();
-
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        Future<Integer> future = null;
-
-        System.out.print("Cutoff: 0");
-
-        try {
-            while(true) // while(We have time left)
-            {
-                long msLeft = MAX_DECISION_TIME_MS - (new Date().getTime() - startTime);
-
-                if(DEBUG) System.out.format("\rCutoff: %d", _cutoff);
-
-                future = executor.submit(new Callable<Integer>() {
-                    @Override
-                    public Integer call() throws Exception {
-                        return minimax();
-                    }
-                });
-
-                result = future.get(msLeft, TimeUnit.MILLISECONDS);
-                _cutoff++;
+        _startTime = startTime;
+        _stats = new SearchStats();
+        boolean ponderHit = _ponderHit;
+        _ponderHit = false;
+        _stats.setPonder(ponderHit, ponderHit ? _ponderCutoff : 0, _ponderNodes);
+        _ponderNodes = 0;
+
+        if(_openingBook != null) {
+            int bookMove = _openingBook.getMove(_state);
+            if(bookMove >= 0) {
+                _stats.finish(bookMove, 0, new Date().getTime() - startTime);
+                _lastStats = _stats;
+                if(DEBUG) System.out.println("Book move: " + bookMove);
+                return bookMove;
             }
-        } catch (InterruptedException ignored) {
-            System.out.println(ignored);
-        } catch (ExecutionException ignored) {
-            System.out.println(ignored);
-        } catch (TimeoutException ignored) {
-            // Stop the execution of minimax.
-            future.cancel(true);
-            try {
-                future.get();
-            } catch (Exception ignore) {
+        }
+
+        int maxCutoff = Math.max(1, _cols * _rows - _state.getCoinCount() - 1);
+        int startCutoff = Math.min(_prevCutoff, maxCutoff);
+        _bestMove = -1;
+        _bestCutoff = 0;
+        if(ponderHit && _ponderCutoff > 0) {
+            // The ponder search already searched this position to _ponderCutoff.
+            _bestMove = _ponderMove;
+            _bestCutoff = Math.min(_ponderCutoff, maxCutoff);
+            startCutoff = Math.min(_bestCutoff + 1, maxCutoff);
+            if(_bestCutoff == maxCutoff) {
+                // It searched to the end of the game, a new search would only repeat it.
+                _stats.finish(_bestMove, 0, new Date().getTime() - startTime);
+                _lastStats = _stats;
+                if(DEBUG) System.out.println("Ponder move: " + _bestMove);
+                return _bestMove;
             }
         }
+        _partialMove = -1;
+        _partialCutoff = 0;
+        _timeManager = new TimeManager(_moveTimeMs, _state.getEvaluationUnit());
+        _solvedMove = -1;
+        boolean solving = _solverEnabled && solverReaches();
+        long solverNodes = solving ? _solver.getNodes() : 0;
+
+        SearchScheduler scheduler = scheduler();
+        _control.startDeadline(_moveTimeMs - (new Date().getTime() - startTime));
+        if(solving)
+            scheduler.submit(solve(_solver));
+        List<Search> searches = new ArrayList<Search>();
+        for(int i = 0; i < _threadCount; i++) {
+            Search search = new Search(_state, _transpositionTable, _playerId, _control);
+            search.setPositionCache(_positionCache);
+            searches.add(search);
+            scheduler.submit(iterativeDeepening(search, startCutoff + i % 2, maxCutoff, false));
+        }
+
+        if(DEBUG) System.out.print("Cutoff: 0");
+
+        // Everything stops once the time manager sees no use in another iteration,
+        // at the deadline, or once the solver or a search reaches the end.
+        // After that the counters of the searches are final.
+        scheduler.awaitAll(_control);
+
+        int result;
+        SearchStats stats;
+        synchronized (this) {
+            if(_solvedMove >= 0)
+                result = _solvedMove;
+            else if(_partialCutoff > _bestCutoff)
+                result = _partialMove;
+            else
+                result = _bestMove;
+            _prevCutoff = Math.max(1, _bestCutoff);
+            stats = _stats;
+            if(_solvedMove >= 0)
+                stats.setSolved(_solvedScore);
+        }
+        if(result < 0)
+            result = firstFreeColumn();
 
-        _prevCutoff = _cutoff - 1;
+        for(Search search : searches)
+            stats.add(search.getStats());
+        if(solving)
+            stats.solverNodes = _solver.getNodes() - solverNodes;
+        stats.finish(result, _threadCount, new Date().getTime() - startTime);
+        _lastStats = stats;
 
-        _state.undoAll();
-        if(DEBUG) System.out.format("\r\nDecision: %d\r\n", result);
+        if(DEBUG) System.out.print("\r\n" + stats);
         return result;
     }
 
-    private double boardEvaluation(int playerId) {
-        int own = 0;
-        int enemy = 0;
-
-        for(int c = 0; c < _cols; c++)
-            if(0 < _state.getCoinsInColumn(c)) {
-                int cns = totalConnectedNeightboors(c);
-                if(_state.getCoinPlayer(c) == playerId)
-                    own += cns;
-                else
-                    enemy += cns;
-            }
-
-        return (own - enemy) / 10000.0;
+    /**
+     * @return The scheduler with a thread for every search and one for the
+     *         solver, started on first use.
+     */
+    private SearchScheduler scheduler() {
+        if(_scheduler != null && _scheduler.getThreadCount() != _threadCount + 1) {
+            _scheduler.close();
+            _scheduler = null;
+        }
+        if(_scheduler == null)
+            _scheduler = new SearchScheduler(_threadCount + 1, "Search");
+        return _scheduler;
     }
 
-    private int minimax() throws InterruptedException {
-        // Loop through potential actions (columns)
-        double greatestGain = Double.NEGATIVE_INFINITY;
-        int columnToPlay = -1;
-        for(int c = 0; c < _cols; c++)
-            if(_state.getCoinsInColumn(c) < _rows)
-            {
-                _state.addCoin(c, _playerId);
-                double gain = min(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0);
-                _state.undoAll();
-
-                if(greatestGain < gain) {
-                    columnToPlay = c;
-                    greatestGain = gain;
+    private Runnable solve(final Solver solver) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int move = solver.getBestMove(_state);
+                    reportSolution(move, solver.getLastScore());
+                    _control.stop();
+                } catch (InterruptedException ignored) {
+                    // Time is up, the heuristic search decides.
                 }
             }
-
-        return columnToPlay;
+        };
     }
 
-    private double min(double a, double b, int depth) throws InterruptedException {
-        if(Thread.currentThread().isInterrupted())
-            throw new InterruptedException();
+    private synchronized void reportSolution(int move, int score) {
+        _solvedMove = move;
+        _solvedScore = score;
+        if(DEBUG) System.out.format("\rSolved: %d", score);
+    }
 
-        Winner winner = gameFinished();
-        if(winner != Winner.NOT_FINISHED) {
-            int whoWon = whoWon(winner);
-            _memoizationTable.put(_state.getBoardHash(), (double) whoWon);
-            return whoWon;
+    /**
+     * Starts the ponder search after our own move, unless the game is over.
+     */
+    private void startPondering() {
+        if(!_ponderEnabled || gameFinished() != Winner.NOT_FINISHED)
+            return;
+
+        int reply = predictReply();
+        GameState state = _state.copy();
+        state.addCoin(reply, _otherPlayerId);
+        if(state.hasFourInARow(_otherPlayerId) || state.isBoardFull())
+            return;
+
+        // Deepens from the start: the shallow iterations are cheap on the
+        // warm table and leave a result even if the opponent answers fast.
+        int maxCutoff = Math.max(1, _cols * _rows - state.getCoinCount() - 1);
+        synchronized (this) {
+            _ponderReply = reply;
+            _ponderMove = -1;
+            _ponderCutoff = 0;
         }
 
-        Double memoizedResult = _memoizationTable.get(_state.getBoardHash());
-        if (memoizedResult != null)
-            return memoizedResult;
+        SearchScheduler scheduler = scheduler();
+        _control.start(0);
+        _ponderSearches = new ArrayList<Search>();
+        for(int i = 0; i < _threadCount; i++) {
+            Search search = new Search(state, _transpositionTable, _playerId, _control);
+            search.setPositionCache(_positionCache);
+            _ponderSearches.add(search);
+            scheduler.submit(iterativeDeepening(search, 1 + i % 2, maxCutoff, true));
+        }
+    }
 
-        if (depth >= _cutoff)
-            return boardEvaluation(_otherPlayerId);
+    /**
+     * Stops the ponder search, if one is running, and records whether the
+     * opponent played the predicted reply.
+     * @param column The opponent's move, or -1 if the search is abandoned.
+     */
+    private void stopPondering(int column) {
+        if(_ponderSearches == null)
+            return;
+
+        _control.stop();
+        _scheduler.awaitAll(_control);
+
+        for(Search search : _ponderSearches)
+            _ponderNodes += search.getNodes();
+        _ponderSearches = null;
+        synchronized (this) {
+            _ponderHit = column >= 0 && column == _ponderReply;
+        }
+    }
 
-        depth++;
+    /**
+     * @return The opponent's winning move, else the move blocking our only
+     *         winning move, else the transposition table's best reply, else
+     *         the free column closest to the center.
+     */
+    private int predictReply() {
+        int columns = _state.getWinningColumns(_otherPlayerId);
+        if(columns == 0 && Integer.bitCount(_state.getWinningColumns(_playerId)) == 1)
+            columns = _state.getWinningColumns(_playerId);
+        if(columns != 0)
+            return Integer.numberOfTrailingZeros(columns);
+
+        long entry = _transpositionTable.probe(_state.getCanonicalKey());
+        if(entry != TranspositionTable.NO_ENTRY) {
+            int move = TranspositionTable.move(entry);
+            if(move >= 0 && _state.isCanonicalMirrored())
+                move = _state.mirrorColumn(move);
+            if(move >= 0 && _state.getCoinsInColumn(move) < _rows)
+                return move;
+        }
 
-        double result = Double.POSITIVE_INFINITY;
-        for(int c = 0; c < _cols; c++)
+        for(int i = 0; i < _cols; i++) {
+            int c = _cols / 2 + (1 - 2 * (i % 2)) * (i + 1) / 2;
             if(_state.getCoinsInColumn(c) < _rows)
-            {
-                _state.addCoin(c, _otherPlayerId);
-
-                result = Math.min(max(a, b, depth), result);
+                return c;
+        }
+        return -1;
+    }
 
-                _state.undoAddCoin();
-                if (result <= a)
-                    return result;
-                b = Math.min(b, result);
+    private Runnable iterativeDeepening(final Search search, final int startCutoff, final int maxCutoff, final boolean ponder) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                int cutoff = Math.min(startCutoff, maxCutoff);
+                try {
+                    for(; cutoff <= maxCutoff; cutoff++) {
+                        SearchStats.IterationEvent event = new SearchStats.IterationEvent();
+                        event.begin();
+                        long nodes = search.getNodes();
+                        int move = search.minimax(cutoff);
+                        nodes = search.getNodes() - nodes;
+                        event.end();
+                        if(event.shouldCommit()) {
+                            event.depth = cutoff;
+                            event.nodes = nodes;
+                            event.bestMove = move;
+                            event.commit();
+                        }
+                        if(ponder)
+                            reportPonderIteration(cutoff, move);
+                        else
+                            reportIteration(cutoff, move, search.getScore(), nodes);
+                    }
+                    // Searched to the end of the game, deeper iterations would repeat it
+                    _control.stop();
+                } catch (InterruptedException ignored) {
+                    // Time is up, the result of the deepest iteration is kept
+                    // unless this one got far enough to improve on it.
+                    if(!ponder)
+                        reportPartialIteration(cutoff, search.getPartialMove());
+                }
             }
-
-        return result;
+        };
     }
 
-    private double max(double a, double b, int depth) throws InterruptedException {
-        if(Thread.currentThread().isInterrupted())
-            throw new InterruptedException();
-
-        Winner winner = gameFinished();
-        if(winner != Winner.NOT_FINISHED) {
-            int whoWon = whoWon(winner);
-            _memoizationTable.put(_state.getBoardHash(), (double) whoWon);
-            return whoWon;
-        }
-
-        Double memoizedResult = _memoizationTable.get(_state.getBoardHash());
-        if (memoizedResult != null)
-            return memoizedResult;
+    private synchronized void reportIteration(int cutoff, int move, int score, long nodes) {
+        if(cutoff <= _bestCutoff)
+            return;
+        _bestCutoff = cutoff;
+        _bestMove = move;
+        long elapsedMs = new Date().getTime() - _startTime;
+        _stats.addIteration(new SearchStats.Iteration(cutoff, elapsedMs, nodes, move));
+        if(DEBUG) System.out.format("\rCutoff: %d", cutoff);
+        if(!_timeManager.iterationDone(cutoff, elapsedMs, move, score))
+            _control.stop();
+    }
 
-        if (depth >= _cutoff)
-            return boardEvaluation(_playerId);
+    private synchronized void reportPartialIteration(int cutoff, int move) {
+        if(move < 0 || cutoff <= _partialCutoff)
+            return;
+        _partialCutoff = cutoff;
+        _partialMove = move;
+    }
 
-        depth++;
+    private synchronized void reportPonderIteration(int cutoff, int move) {
+        if(cutoff <= _ponderCutoff)
+            return;
+        _ponderCutoff = cutoff;
+        _ponderMove = move;
+    }
 
-        double result = Double.NEGATIVE_INFINITY;
+    private int firstFreeColumn() {
         for(int c = 0; c < _cols; c++)
             if(_state.getCoinsInColumn(c) < _rows)
-            {
-                _state.addCoin(c, _playerId);
-
-                result = Math.max(min(a, b, depth), result);
-
-                _state.undoAddCoin();
-                if (result >= b)
-                    return result;
-                a = Math.max(a, result);
-            }
-
-        return result;
-    }
-
-    private int whoWon(Winner winner)
-    {
-        if(winner == Winner.TIE)
-            return 0;
-        else if (winner == Winner.PLAYER1 && _playerId == 1)
-            return 1;
-        else if (winner == Winner.PLAYER2 && _playerId == 2)
-            return 1;
+                return c;
         return -1;
     }
 }
@@ -1,19 +1,192 @@
-import java.util.Stack;
+import java.util.Random;
+
+/**
+ * The board of a game and the moves played on it. create() picks the
+ * representation for the board size: BitboardGameState keeps the whole
+ * board in single longs, ColumnBitboardGameState uses one long per column
+ * for boards that do not fit in 64 bits. Both address a cell as
+ * location = column * (rows + 1) + row.
+ *
+ * Played locations are kept on a fixed size int stack, one slot per cell,
+ * so playing and undoing moves never allocates.
+ *
+ * A Zobrist hash of the board and of its mirror image is kept up to date
+ * on every move, so position keys never need a rescan.
+ *
+ * Every line of four cells on the board has a counter of the coins each
+ * player has in it, also updated on every move. Together with a weight per
+ * cell they give a running line score that getEvaluation() reads in O(1).
+ * With an NTupleNetwork set, the index of every tuple and the network's
+ * sum are kept up to date the same way and replace that score.
+ */
+public abstract class GameState {
+    /** getWinningColumns() has one bit per column in an int. */
+    public static final int MAX_COLUMNS = 32;
 
-public class GameState {
     private static final boolean DEBUG = true;
-    private int _cols, _rows;
-    private long _board;
-    private long _boardCoinColors;
+    private static final long[][] ZOBRIST = new long[2][MAX_COLUMNS * (ColumnBitboardGameState.MAX_ROWS + 1)];
+    static {
+        Random random = new Random(0x5DEECE66DL);
+        for(int p = 0; p < 2; p++)
+            for(int i = 0; i < ZOBRIST[p].length; i++)
+                ZOBRIST[p][i] = random.nextLong();
+    }
+
+    // Lines hold a code of coins1 + 5 * coins2
+    private static final int PLAYER1_CODE = 1;
+    private static final int PLAYER2_CODE = 5;
+    private static final int[] LINE_WEIGHTS = {0, 0, 2, 10, 0};
+    private static final int[] LINE_VALUES = new int[25];
+    static {
+        for(int coins1 = 0; coins1 <= 4; coins1++)
+            for(int coins2 = 0; coins1 + coins2 <= 4; coins2++)
+                if(coins1 == 0 || coins2 == 0)
+                    LINE_VALUES[coins1 * PLAYER1_CODE + coins2 * PLAYER2_CODE] = LINE_WEIGHTS[coins1] - LINE_WEIGHTS[coins2];
+    }
+    private static final int GOOD_THREAT_WEIGHT = 24;
+    private static final int OTHER_THREAT_WEIGHT = 8;
+    /** Network sums are about -3 to 3, the line score's range is a few hundred. */
+    private static final int NETWORK_SCALE = 100;
+    /**
+     * Network scores change about a quarter as much as line scores from one
+     * search depth to the next, so this plays the part of an open three.
+     */
+    private static final int NETWORK_UNIT = (int) Math.ceil(NETWORK_SCALE / 40.0);
+
+    protected final int _cols, _rows;
+    protected final int _height;
     private int[] _coinsCountPerColumn;
-    private Stack<Integer> _moves;
+    private int _coinCount;
+    private long _zobrist;
+    private long _mirrorZobrist;
+    private int[] _moves;
+    private int _moveCount;
+    private int[][] _cellLines;
+    private int[] _cellWeights;
+    private int[] _lineCodes;
+    private int _lineScore;
+    private NTupleNetwork _network;
+    private int[] _tupleIndices;
+    private double _networkSum;
+
+    /**
+     * @return An empty board in the fastest representation for its size.
+     */
+    public static GameState create(int cols, int rows) {
+        if(cols * (rows + 1) <= 64)
+            return new BitboardGameState(cols, rows);
+        return new ColumnBitboardGameState(cols, rows);
+    }
+
+    protected GameState(int cols, int rows) {
+        if(cols < 1 || rows < 1)
+            throw new IllegalArgumentException("The board needs at least one column and one row.");
+        if(cols > MAX_COLUMNS)
+            throw new IllegalArgumentException("Boards are limited to " + MAX_COLUMNS + " columns.");
 
-    public GameState(int cols, int rows) {
         _cols = cols;
         _rows = rows;
+        _height = rows + 1;
 
         _coinsCountPerColumn = new int[cols];
-        _moves = new Stack<Integer>();
+        _moves = new int[cols * rows];
+        createLines();
+    }
+
+    protected GameState(GameState other) {
+        _cols = other._cols;
+        _rows = other._rows;
+        _height = other._height;
+        _coinsCountPerColumn = other._coinsCountPerColumn.clone();
+        _coinCount = other._coinCount;
+        _zobrist = other._zobrist;
+        _mirrorZobrist = other._mirrorZobrist;
+        _moves = other._moves.clone();
+        _moveCount = other._moveCount;
+        _cellLines = other._cellLines;
+        _cellWeights = other._cellWeights;
+        _lineCodes = other._lineCodes.clone();
+        _lineScore = other._lineScore;
+        _network = other._network;
+        _tupleIndices = other._tupleIndices == null ? null : other._tupleIndices.clone();
+        _networkSum = other._networkSum;
+    }
+
+    /**
+     * Copies the board and undo stack, so a search thread can play moves
+     * without touching the original.
+     */
+    public abstract GameState copy();
+
+    /**
+     * Puts a coin of the player in the representation's bitboards.
+     */
+    protected abstract void setCoin(int column, int row, int location, int playerId);
+
+    /**
+     * Removes the coin in the cell from the representation's bitboards.
+     */
+    protected abstract void clearCoin(int column, int row, int location);
+
+    public abstract int getCoinPlayer(int column, int row);
+
+    /**
+     * Checks the whole board for four coins of the player in a row.
+     * @param playerId 1 or 2
+     * @return true if the player has four in a row.
+     */
+    public abstract boolean hasFourInARow(int playerId);
+
+    /**
+     * @param playerId 1 or 2
+     * @return A bit per column, set if the player gets four in a row
+     *         by putting a coin in that column now.
+     */
+    public abstract int getWinningColumns(int playerId);
+
+    /**
+     * @return The threat part of getEvaluation(), as given by threatScore().
+     */
+    protected abstract int getThreatScore();
+
+    /**
+     * Numbers every line of four cells on the board and lists the lines
+     * through each location. A cell weighs as much as the number of lines
+     * through it, which favours the center.
+     */
+    private void createLines() {
+        int[][] directions = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+        int[] lineCounts = new int[_cols * _height];
+        int lineCount = 0;
+        for(int pass = 0; pass < 2; pass++) {
+            for(int c = 0; c < _cols; c++)
+                for(int r = 0; r < _rows; r++)
+                    for(int[] d : directions) {
+                        int endColumn = c + 3 * d[0];
+                        int endRow = r + 3 * d[1];
+                        if(endColumn >= _cols || endRow < 0 || endRow >= _rows)
+                            continue;
+                        for(int i = 0; i < 4; i++) {
+                            int location = (c + i * d[0]) * _height + r + i * d[1];
+                            if(pass == 0)
+                                lineCounts[location]++;
+                            else
+                                _cellLines[location][--lineCounts[location]] = lineCount;
+                        }
+                        if(pass == 1)
+                            lineCount++;
+                    }
+
+            if(pass == 0) {
+                _cellLines = new int[lineCounts.length][];
+                _cellWeights = new int[lineCounts.length];
+                for(int location = 0; location < lineCounts.length; location++) {
+                    _cellLines[location] = new int[lineCounts[location]];
+                    _cellWeights[location] = lineCounts[location];
+                }
+            }
+        }
+        _lineCodes = new int[lineCount];
     }
 
     public void addCoin(int column, int playerId) {
@@ -24,20 +197,26 @@ public class GameState {
         }
 
         _coinsCountPerColumn[column] = coinCount + 1;
+        _coinCount++;
+
+        int location = column*_height + coinCount;
+        int mirrorLocation = (_cols - 1 - column)*_height + coinCount;
 
-        int location = coinCount*_cols + column;
+        setCoin(column, coinCount, location, playerId);
+        _zobrist ^= ZOBRIST[playerId - 1][location];
+        _mirrorZobrist ^= ZOBRIST[playerId - 1][mirrorLocation];
 
-        long bla = 1L << location;
-        long blu = _board | (1L << location);
-        _board |= (1L << location); // put coin on board
-        if (playerId == 2) 
-        {
-            _boardCoinColors |= (1L << location); // set coin color to 1
-        } else {
-            _boardCoinColors &= ~(1L << location); // set coin color to 0
+        int code = playerId == 2 ? PLAYER2_CODE : PLAYER1_CODE;
+        for(int line : _cellLines[location]) {
+            int lineCode = _lineCodes[line];
+            _lineScore += LINE_VALUES[lineCode + code] - LINE_VALUES[lineCode];
+            _lineCodes[line] = lineCode + code;
         }
+        _lineScore += playerId == 2 ? -_cellWeights[location] : _cellWeights[location];
+        if(_network != null)
+            updateNetwork(location, playerId);
 
-        _moves.push(location);
+        _moves[_moveCount++] = location;
     }
 
     public void printBoard() {
@@ -56,57 +235,194 @@ public class GameState {
     }
 
     public void undoAddCoin() {
-        if(_moves.empty())
+        if(_moveCount == 0)
             throw new IllegalStateException("Nothing to undo.");
-        int location = _moves.pop();
-        _board &= ~(1L << location); // set location to 0
-        _boardCoinColors &= ~(1L << location); // set location to 0
+        int location = _moves[--_moveCount];
+        int c = location / _height;
+        int row = location - c*_height;
+        int mirrorLocation = location + (_cols - 1 - 2*c)*_height;
+        int player = getCoinPlayer(c, row);
+
+        clearCoin(c, row, location);
+        _zobrist ^= ZOBRIST[player - 1][location];
+        _mirrorZobrist ^= ZOBRIST[player - 1][mirrorLocation];
+
+        int code = player == 2 ? PLAYER2_CODE : PLAYER1_CODE;
+        for(int line : _cellLines[location]) {
+            int lineCode = _lineCodes[line];
+            _lineScore += LINE_VALUES[lineCode - code] - LINE_VALUES[lineCode];
+            _lineCodes[line] = lineCode - code;
+        }
+        _lineScore -= player == 2 ? -_cellWeights[location] : _cellWeights[location];
+        if(_network != null)
+            updateNetwork(location, -player);
 
-        int c = location % _cols;
         _coinsCountPerColumn[c] = _coinsCountPerColumn[c] - 1;
+        _coinCount--;
     }
 
     public void undoAll() {
-        while(!_moves.empty())
+        while(_moveCount > 0)
             undoAddCoin();
     }
 
+    public int getColumnCount() {
+        return _cols;
+    }
+
+    public int getRowCount() {
+        return _rows;
+    }
+
+    public int getCoinCount() {
+        return _coinCount;
+    }
+
     public int getCoinsInColumn(int column) {
         if(column < 0 || column >= _cols)
             throw new IllegalArgumentException("column out of range.");
         return _coinsCountPerColumn[column];
     }
 
-    public int getCoinPlayer(int column, int row) {
-        if ((_board & (1L << (row*_cols+column) )) != 0)
-        {
-            // The bit was set
-            if ((_boardCoinColors & (1L << (row*_cols+column) )) != 0)
-            {
-                // The bit was set
-                return 2;
+    public boolean isBoardFull() {
+        return _coinCount == _cols * _rows;
+    }
+
+    /**
+     * Evaluates the board with the network from now on, or with the line
+     * and threat score again if it is null.
+     * @throws IllegalArgumentException If the network is for another board size.
+     */
+    public void setNetwork(NTupleNetwork network) {
+        if(network != null && !network.fits(_cols, _rows))
+            throw new IllegalArgumentException("The network is for another board size.");
+        _network = network;
+        _tupleIndices = null;
+        if(network != null)
+            refreshNetwork();
+    }
+
+    public NTupleNetwork getNetwork() {
+        return _network;
+    }
+
+    /**
+     * Recomputes the tuple indices and the sum from the board, needed
+     * after the network's weights changed.
+     */
+    public void refreshNetwork() {
+        _tupleIndices = _network.getEmptyIndices();
+        _networkSum = 0;
+        for(int c = 0; c < _cols; c++)
+            for(int r = 0; r < getCoinsInColumn(c); r++) {
+                int location = c*_height + r;
+                int[] instances = _network.getCellInstances(location);
+                int[] powers = _network.getCellPowers(location);
+                for(int i = 0; i < instances.length; i++)
+                    _tupleIndices[instances[i]] += powers[i] * getCoinPlayer(c, r);
             }
-            return 1;
-        }
-        return 0;
+        float[] weights = _network.getWeights();
+        for(int index : _tupleIndices)
+            _networkSum += weights[index];
     }
 
-    public boolean isBoardFull() {
-        for(int c = 0; c < _cols; c++){
-            if(_coinsCountPerColumn[c] < _rows)
-                return false;
+    /**
+     * Moves the index of every tuple through the location.
+     * @param delta The player id of the coin added, negated if it is removed.
+     */
+    private void updateNetwork(int location, int delta) {
+        int[] instances = _network.getCellInstances(location);
+        int[] powers = _network.getCellPowers(location);
+        float[] weights = _network.getWeights();
+        double sum = _networkSum;
+        for(int i = 0; i < instances.length; i++) {
+            int index = _tupleIndices[instances[i]];
+            int next = index + delta * powers[i];
+            sum += (double) weights[next] - weights[index];
+            _tupleIndices[instances[i]] = next;
         }
-        return true;
+        _networkSum = sum;
+    }
+
+    /**
+     * @return The network's sum for the board, from player 1's point of view.
+     */
+    public double getNetworkSum() {
+        return _networkSum;
+    }
+
+    /**
+     * @return The index into the network's weights of every tuple and mirror
+     *         image, two per tuple. Valid until the next move.
+     */
+    int[] getTupleIndices() {
+        return _tupleIndices;
+    }
+
+    /**
+     * Adds the step to the weights at the indices, once per occurrence,
+     * and updates the sum for the board without rescanning it. Tables of
+     * different tuples do not overlap, so only a tuple's own instances can
+     * index a changed weight.
+     * @param indices Tuple indices as getTupleIndices() returned them, for
+     *                any board.
+     */
+    void addToWeights(int[] indices, float step) {
+        float[] weights = _network.getWeights();
+        double before = 0;
+        for(int i = 0; i < _tupleIndices.length; i++)
+            if(_tupleIndices[i] == indices[i] || _tupleIndices[i] == indices[i ^ 1])
+                before += weights[_tupleIndices[i]];
+        for(int index : indices)
+            weights[index] += step;
+        double after = 0;
+        for(int i = 0; i < _tupleIndices.length; i++)
+            if(_tupleIndices[i] == indices[i] || _tupleIndices[i] == indices[i ^ 1])
+                after += weights[_tupleIndices[i]];
+        _networkSum += after - before;
+    }
+
+    /**
+     * Evaluates the board from player 1's point of view: the running line
+     * score plus the threats of both players. Player 1 moves first and
+     * profits from threats on odd rows counted from the bottom, player 2
+     * from threats on even rows, since those are the cells each of them
+     * gets to fill when the board runs out of other moves.
+     * With a network set, it is the network's sum scaled to a similar range.
+     */
+    public int getEvaluation() {
+        if(_network != null)
+            return (int) Math.round(_networkSum * NETWORK_SCALE);
+        return _lineScore + getThreatScore();
+    }
+
+    /**
+     * @return A small but real difference in getEvaluation(): the score of
+     *         an open line of three, or its counterpart with a network set.
+     */
+    public int getEvaluationUnit() {
+        return _network != null ? NETWORK_UNIT : LINE_WEIGHTS[3];
+    }
+
+    /**
+     * Weighs the empty cells that would complete a four for each player.
+     * Odd rows are rows 1, 3, 5... counted from the bottom, so row index 0, 2, 4...
+     */
+    protected static int threatScore(int oddThreats1, int evenThreats1, int oddThreats2, int evenThreats2) {
+        return GOOD_THREAT_WEIGHT * oddThreats1
+                + OTHER_THREAT_WEIGHT * evenThreats1
+                - GOOD_THREAT_WEIGHT * evenThreats2
+                - OTHER_THREAT_WEIGHT * oddThreats2;
     }
 
     public int getColumnOfPreviouslyPlacedCoin() {
-        if(_moves.empty())
+        if(_moveCount == 0)
             return -1;
-        return _moves.peek() % _cols;
+        return _moves[_moveCount - 1] / _height;
     }
 
     public void resetUndoStack() {
-        _moves.clear();
+        _moveCount = 0;
     }
 
     public int getCoinPlayer(int c) {
@@ -114,12 +430,57 @@ public class GameState {
     }
 
     /**
-     * Does not guarantee no collisions with board of 7*6,
-     * as this required combining two 42 bit numbers into one 64 number.
-     * @return The hash of the board.
+     * Boards without room for a unique key in a long use the Zobrist hash,
+     * where two positions sharing a key is possible but rare enough for the
+     * transposition table, which replaces entries anyway.
+     * @return The key of the board.
+     */
+    public long getPositionKey() {
+        return _zobrist;
+    }
+
+    /**
+     * @return The same key as getPositionKey() for the mirrored board.
+     */
+    public long getMirrorPositionKey() {
+        return _mirrorZobrist;
+    }
+
+    /**
+     * Zobrist keys may collide. Stores that outlive a search and can not
+     * tell a collision, the position cache, opening books and position
+     * tables, are only used with boards that have exact keys.
+     * @return true if no two positions share a key.
+     */
+    public boolean hasExactKeys() {
+        return false;
+    }
+
+    /**
+     * Mirror-symmetric positions share the same canonical key.
+     * @return The smaller of the position key and the mirrored position key.
+     */
+    public long getCanonicalKey() {
+        return Math.min(getPositionKey(), getMirrorPositionKey());
+    }
+
+    /**
+     * Moves stored under the canonical key have to be mirrored with
+     * mirrorColumn() when this returns true.
+     * @return true if the canonical key is the key of the mirrored board.
+     */
+    public boolean isCanonicalMirrored() {
+        return getMirrorPositionKey() < getPositionKey();
+    }
+
+    public int mirrorColumn(int column) {
+        return _cols - 1 - column;
+    }
+
+    /**
+     * @return The Zobrist hash of the orientation chosen by getCanonicalKey().
      */
-    public long getBoardHash()
-    {
-        return (_board << 21 ) ^ _boardCoinColors;
+    public long getZobristHash() {
+        return isCanonicalMirrored() ? _mirrorZobrist : _zobrist;
     }
 }
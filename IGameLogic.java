@@ -7,7 +7,7 @@
  * @version 1.2.2007
  *
  */
-public interface IGameLogic {
+public interface IGameLogic extends AutoCloseable {
 
     public enum Winner {PLAYER1, PLAYER2, TIE, NOT_FINISHED}
 
@@ -42,4 +42,12 @@ public interface IGameLogic {
      * @return Winner enum
      */
     Winner gameFinished();
+
+    /**
+     * Releases the threads and other resources of the logic once no more
+     * games are played with it. Does nothing by default.
+     */
+    @Override
+    default void close() {
+    }
 }
@@ -0,0 +1,174 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A read-only file of positions with a byte value each, memory-mapped so
+ * opening it costs nothing more than the page faults of the lookups.
+ *
+ * The file holds a header, the sorted position keys and then the values
+ * in the same order:
+ *
+ *     int magic, int version, int cols, int rows, int count, int plies
+ *     long key[count]
+ *     byte value[count]
+ *
+ * get() binary searches the keys in place, using only absolute reads of
+ * the mapped buffer, so any number of threads may share one instance.
+ * A key that collides would answer for the wrong position in every
+ * process, so tables are only written for boards with exact keys.
+ */
+public class MappedPositionTable {
+    public static final int NO_VALUE = Integer.MIN_VALUE;
+    private static final int MAGIC = 0x43345054; // "C4PT"
+    // Version 1 had no ply limit in the header.
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 24;
+    private static final Map<String, MappedPositionTable> SHARED = new HashMap<String, MappedPositionTable>();
+
+    private final MappedByteBuffer _buffer;
+    private final int _cols;
+    private final int _rows;
+    private final int _count;
+    private final int _plies;
+    private final int _valuesOffset;
+
+    private MappedPositionTable(MappedByteBuffer buffer) throws IOException {
+        if(buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a position table file.");
+        if(buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported position table version " + buffer.getInt(4) + ".");
+        _buffer = buffer;
+        _cols = buffer.getInt(8);
+        _rows = buffer.getInt(12);
+        _count = buffer.getInt(16);
+        _plies = buffer.getInt(20);
+        _valuesOffset = HEADER_BYTES + 8 * _count;
+        if(_count < 0 || buffer.capacity() != _valuesOffset + _count)
+            throw new IOException("Position table file is truncated.");
+    }
+
+    /**
+     * Maps a table written by write().
+     */
+    public static MappedPositionTable open(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed.
+            return new MappedPositionTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Maps each file once per process, so every game logic shares it.
+     * @return The table, or null if the file does not exist or can not be read.
+     */
+    public static synchronized MappedPositionTable shared(String file) {
+        if(!SHARED.containsKey(file)) {
+            MappedPositionTable table = null;
+            Path path = Paths.get(file);
+            if(Files.isReadable(path)) {
+                try {
+                    table = open(path);
+                } catch(IOException e) {
+                    System.err.println("Could not read " + file + ": " + e.getMessage());
+                }
+            }
+            SHARED.put(file, table);
+        }
+        return SHARED.get(file);
+    }
+
+    /**
+     * Writes the positions sorted by key. The file is replaced in one move,
+     * so a process mapping the old file never sees a half-written one.
+     * @param plies The most coins of a position in the table.
+     * @param keys Distinct position keys.
+     * @param values The value of each key, in the same order.
+     * @throws IllegalArgumentException If the board has no exact keys.
+     */
+    public static void write(Path file, int cols, int rows, int plies, long[] keys, byte[] values) throws IOException {
+        if(keys.length != values.length)
+            throw new IllegalArgumentException("Every key needs one value.");
+        if(!GameState.create(cols, rows).hasExactKeys())
+            throw new IllegalArgumentException("Position tables need exact keys, " + cols + "x" + rows + " boards have none.");
+
+        Integer[] order = new Integer[keys.length];
+        for(int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(keys[a], keys[b]);
+            }
+        });
+        for(int i = 1; i < order.length; i++)
+            if(keys[order[i]] == keys[order[i - 1]])
+                throw new IllegalArgumentException("Duplicate key " + keys[order[i]] + ".");
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try(OutputStream stream = Files.newOutputStream(temporary);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(cols);
+            out.writeInt(rows);
+            out.writeInt(keys.length);
+            out.writeInt(plies);
+            for(int i : order)
+                out.writeLong(keys[i]);
+            for(int i : order)
+                out.writeByte(values[i]);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return The value stored for the key, or NO_VALUE.
+     */
+    public int get(long key) {
+        int low = 0;
+        int high = _count - 1;
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = _buffer.getLong(HEADER_BYTES + 8 * middle);
+            if(middleKey < key)
+                low = middle + 1;
+            else if(middleKey > key)
+                high = middle - 1;
+            else
+                return _buffer.get(_valuesOffset + middle);
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * @return true if the table was written for boards of this size.
+     */
+    public boolean fits(int cols, int rows) {
+        return _cols == cols && _rows == rows;
+    }
+
+    public int size() {
+        return _count;
+    }
+
+    /**
+     * @return The most coins of a position in the table. Positions with
+     *         more coins need not be looked up.
+     */
+    public int getPlies() {
+        return _plies;
+    }
+}
@@ -0,0 +1,378 @@
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monte Carlo tree search, an alternative to GameLogic for wide boards
+ * where alpha-beta can not search deep. Select it by class name, for
+ * example "java ShowGame MctsGameLogic human".
+ *
+ * Moves are selected with PUCT: the win rate of a move plus an
+ * exploration term weighted by a prior from a quick look at the position,
+ * which favors wins, blocks and central columns and nearly rules out
+ * moves that let the opponent win on top of them. Leaves are scored with
+ * playouts that take wins and blocks and play randomly otherwise, on
+ * GameState without allocating.
+ *
+ * The tree lives in a pool of parallel arrays of gamelogic.mctsNodes
+ * nodes, allocated by the first decision and rebuilt for every one after. All threads search the same tree. A visit is counted on
+ * the way down and its result added on the way up, so a move another
+ * thread is still playing out looks like a loss for the time being and
+ * the threads spread over different moves (virtual loss).
+ */
+public class MctsGameLogic implements IGameLogic {
+    private static final boolean DEBUG = Boolean.parseBoolean(System.getProperty("gamelogic.debug", "true"));
+    private static final int DEFAULT_MOVE_TIME_MS = 9900;
+    private static final int POOL_NODES = Integer.getInteger("gamelogic.mctsNodes", 1 << 21);
+    private static final double EXPLORATION = 1.5;
+    /** A leaf is expanded on its second visit, which keeps one-off playouts out of the pool. */
+    private static final int EXPAND_VISITS = 2;
+    private static final int UNEXPANDED = -1;
+    private static final int EXPANDING = -2;
+    private static final byte NOT_TERMINAL = 0;
+    private static final byte WIN = 1;
+    private static final byte DRAW = 2;
+
+    private int _cols;
+    private int _rows;
+    private GameState _state;
+    private int _playerId;
+    private long _moveTimeMs = Long.getLong("gamelogic.moveTimeMs", DEFAULT_MOVE_TIME_MS);
+    private int _threadCount = Integer.getInteger("gamelogic.threads", Runtime.getRuntime().availableProcessors());
+    private SearchScheduler _scheduler;
+    private final SearchControl _control = new SearchControl();
+
+    // The node pool. A node's children are consecutive, starting at _firstChild.
+    private AtomicIntegerArray _firstChild;
+    private byte[] _childCount;
+    private byte[] _move;
+    private byte[] _terminal;
+    private float[] _prior;
+    private AtomicIntegerArray _visits;
+    /** Two points per win and one per draw, for the player who made the node's move. */
+    private AtomicIntegerArray _points;
+    private final AtomicInteger _nodeCount = new AtomicInteger();
+    private final AtomicLong _playouts = new AtomicLong();
+
+    public void initializeGame(int columns, int rows, int playerId) {
+        _cols = columns;
+        _rows = rows;
+        _playerId = playerId;
+        _state = GameState.create(columns, rows);
+    }
+
+    /**
+     * Sets how many threads search the tree. Defaults to the
+     * gamelogic.threads system property or the number of cores.
+     */
+    public void setThreadCount(int threads) {
+        if(threads < 1)
+            throw new IllegalArgumentException("At least one search thread is needed.");
+        _threadCount = threads;
+    }
+
+    /**
+     * Sets the time decideNextMove() may take. Defaults to the
+     * gamelogic.moveTimeMs system property or 9900 ms.
+     */
+    public void setMoveTimeMs(long moveTimeMs) {
+        if(moveTimeMs < 1)
+            throw new IllegalArgumentException("The move time must be positive.");
+        _moveTimeMs = moveTimeMs;
+    }
+
+    /**
+     * @return The playouts of the last decideNextMove().
+     */
+    public long getLastPlayouts() {
+        return _playouts.get();
+    }
+
+    public Winner gameFinished() {
+        if(_state.hasFourInARow(1))
+            return Winner.PLAYER1;
+        if(_state.hasFourInARow(2))
+            return Winner.PLAYER2;
+        if(_state.isBoardFull())
+            return Winner.TIE;
+        return Winner.NOT_FINISHED;
+    }
+
+    public void insertCoin(int column, int playerId) {
+        _state.addCoin(column, playerId);
+    }
+
+    /**
+     * Searches until the move time is up and plays the most visited move.
+     */
+    public int decideNextMove() {
+        long startTime = new Date().getTime();
+        int wins = _state.getWinningColumns(_playerId);
+        if(wins != 0)
+            return Integer.numberOfTrailingZeros(wins);
+
+        if(_firstChild == null)
+            allocatePool();
+        _nodeCount.set(1);
+        _playouts.set(0);
+        initializeNode(0, -1, 0, NOT_TERMINAL);
+        _visits.set(0, 1);
+        expand(0, _state, _playerId);
+        if(_childCount[0] == 1)
+            return _move[_firstChild.get(0)];
+
+        if(_scheduler == null || _scheduler.getThreadCount() != _threadCount) {
+            if(_scheduler != null)
+                _scheduler.close();
+            _scheduler = new SearchScheduler(_threadCount, "MCTS");
+        }
+        _control.startDeadline(_moveTimeMs - (new Date().getTime() - startTime));
+        for(int i = 0; i < _threadCount; i++)
+            _scheduler.submit(worker());
+        _scheduler.awaitAll(_control);
+
+        // Ties, as when the time was spent before a playout, go to the prior.
+        int first = _firstChild.get(0);
+        int best = first;
+        for(int child = first + 1; child < first + _childCount[0]; child++)
+            if(_visits.get(child) > _visits.get(best)
+                    || (_visits.get(child) == _visits.get(best) && _prior[child] > _prior[best]))
+                best = child;
+
+        if(DEBUG) {
+            long elapsedMs = Math.max(1, new Date().getTime() - startTime);
+            System.out.format("Decision: %d, %d playouts (%d/s), %d nodes, win rate %.2f%n",
+                    _move[best], _playouts.get(), _playouts.get() * 1000 / elapsedMs,
+                    Math.min(_nodeCount.get(), POOL_NODES), _points.get(best) / (2.0 * Math.max(1, _visits.get(best))));
+        }
+        return _move[best];
+    }
+
+    /**
+     * Ends the search threads. New ones are started if the logic is used again.
+     */
+    @Override
+    public void close() {
+        if(_scheduler != null) {
+            _scheduler.close();
+            _scheduler = null;
+        }
+    }
+
+    /**
+     * About 19 bytes per node, so logics that never decide cost nothing.
+     */
+    private void allocatePool() {
+        _firstChild = new AtomicIntegerArray(POOL_NODES);
+        _childCount = new byte[POOL_NODES];
+        _move = new byte[POOL_NODES];
+        _terminal = new byte[POOL_NODES];
+        _prior = new float[POOL_NODES];
+        _visits = new AtomicIntegerArray(POOL_NODES);
+        _points = new AtomicIntegerArray(POOL_NODES);
+    }
+
+    private Runnable worker() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                GameState state = _state.copy();
+                int[] path = new int[_cols * _rows + 2];
+                long playouts = 0;
+                while(!_control.isStopped()) {
+                    iterate(state, path);
+                    playouts++;
+                }
+                _playouts.addAndGet(playouts);
+            }
+        };
+    }
+
+    /**
+     * Walks down the tree from the root to a leaf, expands it or plays it
+     * out, and adds the result to the nodes of the path.
+     * @param state The root position, returned unchanged.
+     */
+    private void iterate(GameState state, int[] path) {
+        int node = 0;
+        int player = _playerId;
+        int depth = 0;
+        path[depth++] = node;
+        _visits.incrementAndGet(node);
+        while(_firstChild.get(node) >= 0 && _terminal[node] == NOT_TERMINAL) {
+            node = select(node);
+            _visits.incrementAndGet(node);
+            state.addCoin(_move[node], player);
+            player = 3 - player;
+            path[depth++] = node;
+        }
+
+        // The result from the side of the player to move at the leaf: 2 win, 1 draw, 0 loss
+        int result;
+        if(_terminal[node] == WIN) {
+            result = 0;
+        } else if(_terminal[node] == DRAW) {
+            result = 1;
+        } else {
+            if(_visits.get(node) >= EXPAND_VISITS && expand(node, state, player)) {
+                node = select(node);
+                _visits.incrementAndGet(node);
+                state.addCoin(_move[node], player);
+                player = 3 - player;
+                path[depth++] = node;
+            }
+            if(_terminal[node] == WIN) {
+                result = 0;
+            } else if(_terminal[node] == DRAW) {
+                result = 1;
+            } else {
+                result = playout(state, player);
+            }
+        }
+
+        // Undo the tree moves and credit every node to the player who made its move
+        for(int i = depth - 1; i > 0; i--) {
+            result = 2 - result;
+            _points.addAndGet(path[i], result);
+            state.undoAddCoin();
+        }
+    }
+
+    /**
+     * @return The child with the highest PUCT score.
+     */
+    private int select(int node) {
+        int first = _firstChild.get(node);
+        double exploration = EXPLORATION * Math.sqrt(_visits.get(node));
+        int best = first;
+        double bestScore = -1;
+        for(int child = first; child < first + _childCount[node]; child++) {
+            int visits = _visits.get(child);
+            // Unvisited moves start at an even chance
+            double winRate = visits == 0 ? 0.5 : _points.get(child) / (2.0 * visits);
+            double score = winRate + exploration * _prior[child] / (1 + visits);
+            if(score > bestScore) {
+                bestScore = score;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Adds the children of the node, unless another thread is doing it
+     * or the pool is full.
+     * @param player The player to move in the node's position.
+     * @return true if this thread expanded the node.
+     */
+    private boolean expand(int node, GameState state, int player) {
+        if(!_firstChild.compareAndSet(node, UNEXPANDED, EXPANDING))
+            return false;
+
+        int wins = state.getWinningColumns(player);
+        int threats = state.getWinningColumns(3 - player);
+        int count = 0;
+        for(int c = 0; c < _cols; c++)
+            if(state.getCoinsInColumn(c) < _rows)
+                count++;
+        int first = _nodeCount.getAndAdd(count);
+        if(first + count > POOL_NODES) {
+            // Out of room, the node stays a leaf for good
+            return false;
+        }
+
+        boolean lastCoin = state.getCoinCount() + 1 == _cols * _rows;
+        float total = 0;
+        int child = first;
+        for(int c = 0; c < _cols; c++) {
+            if(state.getCoinsInColumn(c) >= _rows)
+                continue;
+            byte terminal = (wins & (1 << c)) != 0 ? WIN : lastCoin ? DRAW : NOT_TERMINAL;
+            float prior = prior(state, player, c, wins, threats);
+            initializeNode(child++, c, prior, terminal);
+            total += prior;
+        }
+        for(child = first; child < first + count; child++)
+            _prior[child] /= total;
+        _childCount[node] = (byte) count;
+        // Publishes the children to the other threads
+        _firstChild.set(node, first);
+        return true;
+    }
+
+    /**
+     * @return The unnormalized prior of playing the column.
+     */
+    private float prior(GameState state, int player, int column, int wins, int threats) {
+        if((wins & (1 << column)) != 0)
+            return 100;
+        if(threats != 0)
+            return (threats & (1 << column)) != 0 ? 20 : 0.01f;
+
+        state.addCoin(column, player);
+        boolean givesWin = (state.getWinningColumns(3 - player) & (1 << column)) != 0;
+        state.undoAddCoin();
+        if(givesWin)
+            return 0.05f;
+        // 1 in the center down to about 1 / cols at the edges
+        return (float) (_cols - Math.abs(2 * column - (_cols - 1))) / _cols;
+    }
+
+    private void initializeNode(int node, int move, float prior, byte terminal) {
+        _firstChild.set(node, UNEXPANDED);
+        _childCount[node] = 0;
+        _move[node] = (byte) move;
+        _terminal[node] = terminal;
+        _prior[node] = prior;
+        _visits.set(node, 0);
+        _points.set(node, 0);
+    }
+
+    /**
+     * Plays the game to the end: a win is taken, a threat blocked and any
+     * other move chosen at random. The moves are undone before returning.
+     * @return 2 if the player to move wins, 1 for a draw, 0 for a loss.
+     */
+    private int playout(GameState state, int player) {
+        int moves = 0;
+        int result;
+        int toMove = player;
+        while(true) {
+            if(state.getWinningColumns(toMove) != 0) {
+                result = toMove == player ? 2 : 0;
+                break;
+            }
+            if(state.isBoardFull()) {
+                result = 1;
+                break;
+            }
+            int threats = state.getWinningColumns(3 - toMove);
+            int column;
+            if(threats != 0) {
+                if((threats & (threats - 1)) != 0) {
+                    // Two threats, one of them wins next move
+                    result = toMove == player ? 0 : 2;
+                    break;
+                }
+                column = Integer.numberOfTrailingZeros(threats);
+            } else {
+                int free = 0;
+                for(int c = 0; c < _cols; c++)
+                    if(state.getCoinsInColumn(c) < _rows)
+                        free |= 1 << c;
+                int k = ThreadLocalRandom.current().nextInt(Integer.bitCount(free));
+                for(; k > 0; k--)
+                    free &= free - 1;
+                column = Integer.numberOfTrailingZeros(free);
+            }
+            state.addCoin(column, toMove);
+            moves++;
+            toMove = 3 - toMove;
+        }
+        for(; moves > 0; moves--)
+            state.undoAddCoin();
+        return result;
+    }
+}
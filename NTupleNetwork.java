@@ -0,0 +1,292 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A learned evaluation: a set of n-tuples, each a fixed list of cells,
+ * with a lookup table of weights per tuple. The state of a tuple's cells,
+ * 0 for empty and the player id for a coin, read as a base 3 number is
+ * the index into its table, and the value of a board is the sum of the
+ * weights its tuples index, from player 1's point of view. Every tuple is
+ * also applied to the mirrored board, sharing its table.
+ *
+ * All tables live in one flat float array. A GameState with the network
+ * keeps the index of every tuple and the sum up to date on each move, so
+ * a move costs one add per tuple through its cell and reading the value
+ * costs nothing. NTupleTrainer learns the weights by self-play.
+ *
+ * The file holds a header, the cells of the tuples and the weights:
+ *
+ *     int magic, int version, int cols, int rows, int tuples, int length
+ *     int location[tuples * length]
+ *     float weight[tuples * 3^length]
+ */
+public class NTupleNetwork {
+    private static final int MAGIC = 0x43344e54; // "C4NT"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final Map<String, NTupleNetwork> SHARED = new HashMap<String, NTupleNetwork>();
+
+    private final int _cols;
+    private final int _rows;
+    private final int _tupleCount;
+    private final int _length;
+    private final int[] _locations;
+    private final float[] _weights;
+    // Instance 2 * t is tuple t, 2 * t + 1 its mirror image
+    private final int[] _instanceOffsets;
+    private final int[][] _cellInstances;
+    private final int[][] _cellPowers;
+
+    /**
+     * @param locations The cells of each tuple, length after length, as
+     *                  column * (rows + 1) + row.
+     * @param weights The tables of the tuples, 3^length weights each.
+     */
+    public NTupleNetwork(int cols, int rows, int length, int[] locations, float[] weights) {
+        if(length < 1 || length > 12 || locations.length % length != 0)
+            throw new IllegalArgumentException("Tuples need 1 to 12 cells each.");
+        int tableSize = power3(length);
+        _cols = cols;
+        _rows = rows;
+        _length = length;
+        _tupleCount = locations.length / length;
+        if(weights.length != _tupleCount * tableSize)
+            throw new IllegalArgumentException("Every tuple needs " + tableSize + " weights.");
+        _locations = locations;
+        _weights = weights;
+
+        int height = rows + 1;
+        int[] cellCounts = new int[cols * height];
+        for(int location : locations) {
+            if(location < 0 || location >= cols * height || location % height >= rows)
+                throw new IllegalArgumentException("Location " + location + " is not on a " + cols + "x" + rows + " board.");
+            cellCounts[location]++;
+            cellCounts[mirror(location)]++;
+        }
+        _cellInstances = new int[cellCounts.length][];
+        _cellPowers = new int[cellCounts.length][];
+        for(int location = 0; location < cellCounts.length; location++) {
+            _cellInstances[location] = new int[cellCounts[location]];
+            _cellPowers[location] = new int[cellCounts[location]];
+        }
+        _instanceOffsets = new int[2 * _tupleCount];
+        for(int t = 0; t < _tupleCount; t++) {
+            _instanceOffsets[2 * t] = _instanceOffsets[2 * t + 1] = t * tableSize;
+            int power = 1;
+            for(int i = 0; i < length; i++) {
+                int location = locations[t * length + i];
+                addCell(location, 2 * t, power, cellCounts);
+                addCell(mirror(location), 2 * t + 1, power, cellCounts);
+                power *= 3;
+            }
+        }
+    }
+
+    private void addCell(int location, int instance, int power, int[] cellCounts) {
+        int i = --cellCounts[location];
+        _cellInstances[location][i] = instance;
+        _cellPowers[location][i] = power;
+    }
+
+    private int mirror(int location) {
+        int height = _rows + 1;
+        int column = location / height;
+        return location + (_cols - 1 - 2 * column) * height;
+    }
+
+    private static int power3(int exponent) {
+        int power = 1;
+        for(int i = 0; i < exponent; i++)
+            power *= 3;
+        return power;
+    }
+
+    /**
+     * Creates a network of all-zero weights with tuples made of random
+     * walks over neighbouring cells, for NTupleTrainer to start from.
+     */
+    public static NTupleNetwork createRandom(int cols, int rows, int tupleCount, int length, long seed) {
+        if(length > cols * rows)
+            throw new IllegalArgumentException("The board has fewer than " + length + " cells.");
+        Random random = new Random(seed);
+        int height = rows + 1;
+        int[] locations = new int[tupleCount * length];
+        for(int t = 0; t < tupleCount; t++) {
+            int column = random.nextInt(cols);
+            int row = random.nextInt(rows);
+            int cells = 0;
+            while(cells < length) {
+                int location = column * height + row;
+                boolean seen = false;
+                for(int i = 0; i < cells; i++)
+                    seen |= locations[t * length + i] == location;
+                if(!seen)
+                    locations[t * length + cells++] = location;
+
+                // One step to one of the eight neighbours that is on the board
+                int nextColumn, nextRow;
+                do {
+                    nextColumn = column + random.nextInt(3) - 1;
+                    nextRow = row + random.nextInt(3) - 1;
+                } while(nextColumn < 0 || nextColumn >= cols || nextRow < 0 || nextRow >= rows
+                        || (nextColumn == column && nextRow == row));
+                column = nextColumn;
+                row = nextRow;
+            }
+        }
+        return new NTupleNetwork(cols, rows, length, locations, new float[tupleCount * power3(length)]);
+    }
+
+    /**
+     * Reads a network written by write().
+     */
+    public static NTupleNetwork read(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+            while(buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read to the end of the file
+            }
+            buffer.flip();
+            if(buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+                throw new IOException("Not an n-tuple network file.");
+            if(buffer.getInt(4) != VERSION)
+                throw new IOException("Unsupported n-tuple network version " + buffer.getInt(4) + ".");
+            int cols = buffer.getInt(8);
+            int rows = buffer.getInt(12);
+            int tupleCount = buffer.getInt(16);
+            int length = buffer.getInt(20);
+            if(tupleCount < 0 || length < 1 || length > 12)
+                throw new IOException("Invalid n-tuple network header.");
+            long weightCount = (long) tupleCount * power3(length);
+            if(buffer.limit() != HEADER_BYTES + 4L * tupleCount * length + 4 * weightCount)
+                throw new IOException("N-tuple network file is truncated.");
+
+            int[] locations = new int[tupleCount * length];
+            float[] weights = new float[(int) weightCount];
+            buffer.position(HEADER_BYTES);
+            buffer.asIntBuffer().get(locations);
+            buffer.position(HEADER_BYTES + 4 * locations.length);
+            buffer.asFloatBuffer().get(weights);
+            try {
+                return new NTupleNetwork(cols, rows, length, locations, weights);
+            } catch(IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads each file once per process, so every game logic shares the weights.
+     * @return The network, or null if the file does not exist or can not be read.
+     */
+    public static synchronized NTupleNetwork shared(String file) {
+        if(!SHARED.containsKey(file)) {
+            NTupleNetwork network = null;
+            Path path = Paths.get(file);
+            if(Files.isReadable(path)) {
+                try {
+                    network = read(path);
+                } catch(IOException e) {
+                    System.err.println("Could not read " + file + ": " + e.getMessage());
+                }
+            }
+            SHARED.put(file, network);
+        }
+        return SHARED.get(file);
+    }
+
+    /**
+     * Writes the network. The file is replaced in one move, so a process
+     * reading the old file never sees a half-written one.
+     */
+    public void write(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try(OutputStream stream = Files.newOutputStream(temporary);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_cols);
+            out.writeInt(_rows);
+            out.writeInt(_tupleCount);
+            out.writeInt(_length);
+            for(int location : _locations)
+                out.writeInt(location);
+            for(float weight : _weights)
+                out.writeFloat(weight);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return true if the network was made for boards of this size.
+     */
+    public boolean fits(int cols, int rows) {
+        return _cols == cols && _rows == rows;
+    }
+
+    /**
+     * Reads all weights, so it is worth keeping the result.
+     * @return A hash of the tuples and weights, never 0.
+     */
+    public int getChecksum() {
+        int hash = 31 * Arrays.hashCode(_locations) + Arrays.hashCode(_weights);
+        return hash == 0 ? 1 : hash;
+    }
+
+    public int getTupleCount() {
+        return _tupleCount;
+    }
+
+    public int getTupleLength() {
+        return _length;
+    }
+
+    /**
+     * @return The number of tables indexed by a board, two per tuple.
+     */
+    int getInstanceCount() {
+        return _instanceOffsets.length;
+    }
+
+    /**
+     * @return The index of every instance's table on an empty board.
+     */
+    int[] getEmptyIndices() {
+        return _instanceOffsets.clone();
+    }
+
+    /**
+     * @return The instances with a cell at the location.
+     */
+    int[] getCellInstances(int location) {
+        return _cellInstances[location];
+    }
+
+    /**
+     * @return For each of getCellInstances(), the weight of the cell in the index.
+     */
+    int[] getCellPowers(int location) {
+        return _cellPowers[location];
+    }
+
+    /**
+     * The weights, indexed by the sums GameState keeps. Training writes
+     * them in place.
+     */
+    float[] getWeights() {
+        return _weights;
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ *
+ * Learns the weights of an NTupleNetwork by self-play with temporal
+ * difference learning:
+ *
+ *     java NTupleTrainer games [file cols rows tuples length]
+ *
+ * If the file holds a network for the board size, training continues from
+ * it, otherwise it starts from random tuples and zero weights. The network
+ * is written to the file after every report and at the end, and GameLogic
+ * evaluates with it once it is in place.
+ *
+ * Both sides play the move whose position the network values best for
+ * them, or a random move one time in ten. After every move that was not
+ * random, the value of the position before it, squashed by tanh, is moved
+ * towards the value of the position after it, or towards the result if the
+ * game ended: 1 for a win of player 1, -1 for player 2 and 0 for a draw.
+ * The moves are played on a GameState that keeps the network's sum, so
+ * nothing is allocated per move.
+ *
+ */
+
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+public class NTupleTrainer
+{
+    private static final double LEARNING_RATE = 0.002;
+    private static final double EXPLORATION = 0.1;
+    private static final int REPORTS = 20;
+
+    private final NTupleNetwork _network;
+    private final GameState _state;
+    private final Random _random;
+    private final int[] _indices;
+    private final int[] _moves;
+    private long _games;
+    private long _reportGames;
+    private long _wins1;
+    private long _wins2;
+    private double _errorSum;
+    private long _updates;
+
+    /**
+     * Valid arguments: games [file cols rows tuples length]
+     * standard values are ntuple.weights on 7x6, 70 tuples of 8 cells
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 1) {
+            printHelp("");
+            System.exit(1);
+        }
+
+        long games = 0;
+        String file = "ntuple.weights";
+        int cols = 7;
+        int rows = 6;
+        int tuples = 70;
+        int length = 8;
+        try {
+            games = Long.parseLong(args[0]);
+            if(args.length >= 2) file = args[1];
+            if(args.length >= 3) cols = Integer.parseInt(args[2]);
+            if(args.length >= 4) rows = Integer.parseInt(args[3]);
+            if(args.length >= 5) tuples = Integer.parseInt(args[4]);
+            if(args.length >= 6) length = Integer.parseInt(args[5]);
+        } catch(NumberFormatException nfe) {
+            printHelp("Could not parse number: " + nfe.getMessage());
+            System.exit(1);
+        }
+
+        Path path = Paths.get(file);
+        NTupleNetwork network = null;
+        if(Files.exists(path)) {
+            network = NTupleNetwork.read(path);
+            if(!network.fits(cols, rows)) {
+                printHelp(file + " holds a network for another board size.");
+                System.exit(1);
+            }
+            System.out.format("Continuing %s: %d tuples of %d cells%n", file, network.getTupleCount(), network.getTupleLength());
+        } else {
+            network = NTupleNetwork.createRandom(cols, rows, tuples, length, 1);
+        }
+
+        NTupleTrainer trainer = new NTupleTrainer(network, cols, rows, System.nanoTime());
+        long startTime = System.nanoTime();
+        long reportEvery = Math.max(1, games / REPORTS);
+        while(trainer.getGames() < games) {
+            trainer.train(Math.min(reportEvery, games - trainer.getGames()));
+            network.write(path);
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            System.out.format("%d games, %.0f games/s, %s%n", trainer.getGames(), trainer.getGames() / seconds, trainer.report());
+        }
+    }
+
+    public static void printHelp(String errMsg) {
+        if(!errMsg.equals("")) {
+            System.err.println(errMsg);
+        }
+        System.err.println("Usage: java NTupleTrainer games [file cols rows tuples length]");
+        System.err.println("\tgames\t - The number of self-play games to learn from.");
+        System.err.println("\tfile\t - The network to continue and write, defaults to ntuple.weights.");
+        System.err.println("\tcols/rows\t - Board size, defaults to 7 and 6.");
+        System.err.println("\ttuples/length\t - Tuples of a new network and their cells, defaults to 70 and 8.");
+    }
+
+    public NTupleTrainer(NTupleNetwork network, int cols, int rows, long seed) {
+        _network = network;
+        _state = GameState.create(cols, rows);
+        _state.setNetwork(network);
+        _random = new Random(seed);
+        _indices = new int[network.getInstanceCount()];
+        _moves = new int[cols];
+    }
+
+    public long getGames() {
+        return _games;
+    }
+
+    /**
+     * Plays the games and learns from them.
+     */
+    public void train(long games) {
+        for(long i = 0; i < games; i++)
+            playGame();
+    }
+
+    /**
+     * @return The results and the mean error of the updates since the last
+     *         report, and resets them.
+     */
+    public String report() {
+        long games = Math.max(1, _reportGames);
+        String report = String.format("player 1 %.1f%%, player 2 %.1f%%, mean error %.4f",
+                100.0 * _wins1 / games, 100.0 * _wins2 / games, _errorSum / Math.max(1, _updates));
+        _reportGames = 0;
+        _wins1 = _wins2 = 0;
+        _errorSum = 0;
+        _updates = 0;
+        return report;
+    }
+
+    private void playGame() {
+        int cols = _state.getColumnCount();
+        int rows = _state.getRowCount();
+        int player = 1;
+        double value = Math.tanh(_state.getNetworkSum());
+        while(true) {
+            int count = 0;
+            for(int c = 0; c < cols; c++)
+                if(_state.getCoinsInColumn(c) < rows)
+                    _moves[count++] = c;
+
+            boolean explore = _random.nextDouble() < EXPLORATION;
+            int move = _moves[_random.nextInt(count)];
+            if(!explore) {
+                double best = Double.NaN;
+                for(int i = 0; i < count; i++) {
+                    _state.addCoin(_moves[i], player);
+                    double next = value(player);
+                    _state.undoAddCoin();
+                    if(Double.isNaN(best) || (player == 1 ? next > best : next < best)) {
+                        best = next;
+                        move = _moves[i];
+                    }
+                }
+            }
+
+            System.arraycopy(_state.getTupleIndices(), 0, _indices, 0, _indices.length);
+            _state.addCoin(move, player);
+            double next = value(player);
+            if(!explore) {
+                double error = next - value;
+                float step = (float) (LEARNING_RATE * error * (1 - value * value));
+                _state.addToWeights(_indices, step);
+                next = value(player);
+                _errorSum += Math.abs(error);
+                _updates++;
+            }
+            value = next;
+
+            if(_state.hasFourInARow(player) || _state.isBoardFull())
+                break;
+            player = player == 1 ? 2 : 1;
+        }
+
+        _games++;
+        _reportGames++;
+        if(_state.hasFourInARow(1))
+            _wins1++;
+        else if(_state.hasFourInARow(2))
+            _wins2++;
+        _state.undoAll();
+    }
+
+    /**
+     * @param player The player who made the last move.
+     * @return The result if the last move ended the game, else the
+     *         network's value of the board.
+     */
+    private double value(int player) {
+        if(_state.hasFourInARow(player))
+            return player == 1 ? 1 : -1;
+        if(_state.isBoardFull())
+            return 0;
+        return Math.tanh(_state.getNetworkSum());
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Best moves of the early positions, searched deeply ahead of time by
+ * OpeningBookGenerator. Positions are stored under their canonical key
+ * with the move in the canonical orientation, so one entry serves a
+ * position and its mirror image.
+ */
+public class OpeningBook {
+    private final MappedPositionTable _table;
+
+    public OpeningBook(MappedPositionTable table) {
+        _table = table;
+    }
+
+    /**
+     * @return The book shared by the whole process, or null if the file
+     *         does not exist or can not be read.
+     */
+    public static OpeningBook shared(String file) {
+        MappedPositionTable table = MappedPositionTable.shared(file);
+        return table == null ? null : new OpeningBook(table);
+    }
+
+    public boolean fits(int cols, int rows) {
+        return _table.fits(cols, rows);
+    }
+
+    /**
+     * @return The column to play in the position, or -1 if it is not in the
+     *         book or its board has no exact keys.
+     */
+    public int getMove(GameState state) {
+        if(!_table.fits(state.getColumnCount(), state.getRowCount()) || !state.hasExactKeys())
+            return -1;
+        int move = _table.get(state.getCanonicalKey());
+        if(move == MappedPositionTable.NO_VALUE)
+            return -1;
+        if(state.isCanonicalMirrored())
+            move = state.mirrorColumn(move);
+        if(move < 0 || move >= state.getColumnCount() || state.getCoinsInColumn(move) >= state.getRowCount())
+            return -1;
+        return move;
+    }
+
+    public int size() {
+        return _table.size();
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ *
+ * Builds the opening book read by GameLogic. Every position reachable in
+ * up to the given number of plies is searched to a fixed depth, and its
+ * best move is stored under the position's canonical key:
+ *
+ *     java OpeningBookGenerator plies depth [file cols rows]
+ *
+ * Positions are searched in parallel, one per thread, on one shared
+ * transposition table. Search scores from the side of the player to move,
+ * so the table serves both sides.
+ *
+ */
+
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OpeningBookGenerator
+{
+    private static final int TABLE_MEGABYTES = Integer.getInteger("gamelogic.ttMegabytes", 64);
+
+    /**
+     * Valid arguments: plies depth [file cols rows]
+     * standard values are opening.book on 7x6
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if(args.length < 2) {
+            printHelp("");
+            System.exit(1);
+        }
+
+        int plies = 0;
+        int depth = 0;
+        String file = "opening.book";
+        int cols = 7;
+        int rows = 6;
+        try {
+            plies = Integer.parseInt(args[0]);
+            depth = Integer.parseInt(args[1]);
+            if(args.length >= 3) file = args[2];
+            if(args.length >= 4) cols = Integer.parseInt(args[3]);
+            if(args.length >= 5) rows = Integer.parseInt(args[4]);
+        } catch(NumberFormatException nfe) {
+            printHelp("Could not parse number: " + nfe.getMessage());
+            System.exit(1);
+        }
+
+        if(!GameState.create(cols, rows).hasExactKeys()) {
+            printHelp("Books need exact position keys, cols * (rows + 1) can be at most 64.");
+            System.exit(1);
+        }
+
+        long startTime = System.nanoTime();
+        List<GameState> positions = collectPositions(cols, rows, plies);
+        System.out.format("%d positions up to ply %d%n", positions.size(), plies);
+
+        long[] keys = new long[positions.size()];
+        byte[] moves = new byte[positions.size()];
+        searchPositions(positions, depth, keys, moves);
+
+        MappedPositionTable.write(Paths.get(file), cols, rows, plies, keys, moves);
+        System.out.format("%nWrote %s in %.1f s%n", file, (System.nanoTime() - startTime) / 1e9);
+    }
+
+    public static void printHelp(String errMsg) {
+        if(!errMsg.equals("")) {
+            System.err.println(errMsg);
+        }
+        System.err.println("Usage: java OpeningBookGenerator plies depth [file cols rows]");
+        System.err.println("\tplies\t - Positions with up to this many coins are put in the book.");
+        System.err.println("\tdepth\t - Search depth of every position.");
+        System.err.println("\tfile\t - The book to write, defaults to opening.book.");
+        System.err.println("\tcols/rows\t - Board size, defaults to 7 and 6.");
+    }
+
+    /**
+     * @return One position per canonical key with up to the given number
+     *         of coins, leaving out finished games.
+     */
+    static List<GameState> collectPositions(int cols, int rows, int plies) {
+        List<GameState> positions = new ArrayList<GameState>();
+        Set<Long> seen = new HashSet<Long>();
+        List<GameState> ply = new ArrayList<GameState>();
+        ply.add(GameState.create(cols, rows));
+        seen.add(ply.get(0).getCanonicalKey());
+
+        for(int coins = 0; coins <= plies && !ply.isEmpty(); coins++) {
+            positions.addAll(ply);
+            if(coins == plies)
+                break;
+
+            int player = coins % 2 + 1;
+            List<GameState> next = new ArrayList<GameState>();
+            for(GameState state : ply)
+                for(int c = 0; c < cols; c++) {
+                    if(state.getCoinsInColumn(c) >= rows)
+                        continue;
+                    GameState child = state.copy();
+                    child.addCoin(c, player);
+                    child.resetUndoStack();
+                    if(child.hasFourInARow(player) || child.isBoardFull())
+                        continue;
+                    if(seen.add(child.getCanonicalKey()))
+                        next.add(child);
+                }
+            ply = next;
+        }
+        return positions;
+    }
+
+    /**
+     * Searches every position with iterative deepening, as GameLogic does,
+     * and fills in its key and its move in the canonical orientation.
+     */
+    private static void searchPositions(final List<GameState> positions, final int depth,
+                                        final long[] keys, final byte[] moves) throws Exception {
+        final TranspositionTable table = new TranspositionTable(TABLE_MEGABYTES);
+        final AtomicInteger done = new AtomicInteger();
+        int threads = Integer.getInteger("gamelogic.threads", Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+        for(int i = 0; i < positions.size(); i++) {
+            final int index = i;
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    GameState state = positions.get(index);
+                    int player = state.getCoinCount() % 2 + 1;
+                    int maxCutoff = Math.max(1, state.getColumnCount() * state.getRowCount() - state.getCoinCount() - 1);
+                    Search search = new Search(state, table, player);
+                    int move = -1;
+                    for(int cutoff = 1; cutoff <= Math.min(depth, maxCutoff); cutoff++)
+                        move = search.minimax(cutoff);
+
+                    keys[index] = state.getCanonicalKey();
+                    moves[index] = (byte) (state.isCanonicalMirrored() ? state.mirrorColumn(move) : move);
+                    int count = done.incrementAndGet();
+                    if(count % 100 == 0 || count == positions.size())
+                        System.out.format("\r%d/%d searched", count, positions.size());
+                    return null;
+                }
+            }));
+        }
+        try {
+            for(Future<Void> future : futures)
+                future.get();
+        } catch(ExecutionException ee) {
+            throw (Exception) ee.getCause();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
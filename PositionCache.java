@@ -0,0 +1,187 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Exact search results of deep positions, kept in a memory-mapped file so
+ * they outlive the transposition table, which is cleared every game, and
+ * the process. GameLogic uses one when the gamelogic.positionCache system
+ * property names a file. Pages are read as the searches touch them, so
+ * opening a large cache costs nothing up front.
+ *
+ * The file holds a header and then the slots, laid out like the
+ * transposition table: buckets of two, the first keeping the deepest entry
+ * and the second always replaced, with key ^ entry stored next to the
+ * entry so torn slots read as misses. Entries are packed as in
+ * TranspositionTable. Only boards with exact keys use a cache, see
+ * GameState.hasExactKeys(); it can not tell a Zobrist collision.
+ *
+ *     int magic, int version, int cols, int rows, int evaluation, int bucketBits, long 0
+ *     long keyXorEntry, long entry, per slot
+ *
+ * Scores depend on the evaluation, so a file written for another board
+ * size or evaluation is refused rather than cleared: another process may
+ * be using it. The mapping is shared, so processes opening the same file
+ * see each other's entries.
+ */
+public class PositionCache {
+    /** Shallower results are cheap to search again and stay out of the cache. */
+    public static final int MIN_DEPTH = 6;
+    private static final int MAGIC = 0x43345043; // "C4PC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int BYTES_PER_ENTRY = 16;
+    private static final Map<String, PositionCache> SHARED = new HashMap<String, PositionCache>();
+
+    private final MappedByteBuffer _buffer;
+    private final int _cols;
+    private final int _rows;
+    private final int _evaluation;
+    private final int _bucketBits;
+
+    private PositionCache(MappedByteBuffer buffer, int cols, int rows, int evaluation, int bucketBits) {
+        _buffer = buffer;
+        _cols = cols;
+        _rows = rows;
+        _evaluation = evaluation;
+        _bucketBits = bucketBits;
+    }
+
+    /**
+     * Maps the cache, creating the file if it does not exist or is empty.
+     * @param evaluation Identifies the evaluation the scores come from, see
+     *                   NTupleNetwork.getChecksum(), 0 for GameState's own.
+     * @param megabytes The size of a new file. The number of entries is
+     *                  rounded down to a power of two. An existing file
+     *                  keeps its size.
+     * @throws IOException If the file holds a cache for another board size
+     *                     or evaluation, or is not a cache at all.
+     */
+    public static PositionCache open(Path file, int cols, int rows, int evaluation, int megabytes) throws IOException {
+        if(megabytes < 1)
+            throw new IllegalArgumentException("The cache needs at least one megabyte.");
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Keeps a process creating the file from racing one opening it,
+            // released with the channel. The mapping stays valid after that.
+            channel.lock();
+            if(channel.size() == 0) {
+                long entries = Long.highestOneBit((long) megabytes * 1024 * 1024 / BYTES_PER_ENTRY);
+                entries = Math.min(entries, Long.highestOneBit((Integer.MAX_VALUE - HEADER_BYTES) / BYTES_PER_ENTRY));
+                int bucketBits = Long.numberOfTrailingZeros(entries) - 1;
+                // The file grows zero-filled, which reads as empty slots.
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + entries * BYTES_PER_ENTRY);
+                buffer.putInt(8, cols);
+                buffer.putInt(12, rows);
+                buffer.putInt(16, evaluation);
+                buffer.putInt(20, bucketBits);
+                buffer.putInt(4, VERSION);
+                // Written last, so a file cut short while created is refused.
+                buffer.putInt(0, MAGIC);
+                buffer.force();
+                return new PositionCache(buffer, cols, rows, evaluation, bucketBits);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while(header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                // Read the whole header
+            }
+            if(header.position() < HEADER_BYTES || header.getInt(0) != MAGIC)
+                throw new IOException("Not a position cache file.");
+            if(header.getInt(4) != VERSION)
+                throw new IOException("Unsupported position cache version " + header.getInt(4) + ".");
+            int bucketBits = header.getInt(20);
+            if(bucketBits < 0 || bucketBits > 25 || channel.size() != HEADER_BYTES + (2L * BYTES_PER_ENTRY << bucketBits))
+                throw new IOException("Position cache file is truncated.");
+            if(header.getInt(8) != cols || header.getInt(12) != rows)
+                throw new IOException("The cache is for " + header.getInt(8) + "x" + header.getInt(12) + " boards.");
+            if(header.getInt(16) != evaluation)
+                throw new IOException("The cache is for another evaluation.");
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            return new PositionCache(buffer, cols, rows, evaluation, bucketBits);
+        }
+    }
+
+    /**
+     * Maps each file once per process, so every game logic shares it.
+     * @return The cache, or null if the file can not be mapped, or if it is
+     *         already in use for another board size or evaluation.
+     */
+    public static synchronized PositionCache shared(String file, int cols, int rows, int evaluation, int megabytes) {
+        if(!SHARED.containsKey(file)) {
+            PositionCache cache = null;
+            try {
+                cache = open(Paths.get(file), cols, rows, evaluation, megabytes);
+            } catch(IOException e) {
+                System.err.println("Could not map " + file + ": " + e.getMessage());
+            }
+            SHARED.put(file, cache);
+        }
+        PositionCache cache = SHARED.get(file);
+        return cache != null && cache.fits(cols, rows, evaluation) ? cache : null;
+    }
+
+    public boolean fits(int cols, int rows, int evaluation) {
+        return _cols == cols && _rows == rows && _evaluation == evaluation;
+    }
+
+    /**
+     * @param key A canonical position key.
+     * @return The packed entry stored for the key, or TranspositionTable.NO_ENTRY.
+     */
+    public long probe(long key) {
+        long offset = offsetOf(key);
+        for(int i = 0; i < 2; i++, offset += BYTES_PER_ENTRY) {
+            long entry = _buffer.getLong((int) offset + 8);
+            if((_buffer.getLong((int) offset) ^ entry) == key && entry != TranspositionTable.NO_ENTRY)
+                return entry;
+        }
+        return TranspositionTable.NO_ENTRY;
+    }
+
+    /**
+     * Keeps an exact result of at least MIN_DEPTH, unless the cache has a
+     * deeper one for the position.
+     * @param bestMove The best column in the orientation of the canonical key.
+     */
+    public void store(long key, int score, int depth, int bestMove) {
+        if(depth < MIN_DEPTH)
+            return;
+        long entry = TranspositionTable.entry(score, depth, TranspositionTable.EXACT, bestMove);
+
+        int offset = (int) offsetOf(key);
+        long current = _buffer.getLong(offset + 8);
+        boolean same = (_buffer.getLong(offset) ^ current) == key;
+        if(current != TranspositionTable.NO_ENTRY && !same && TranspositionTable.depth(current) > depth) {
+            offset += BYTES_PER_ENTRY;
+            current = _buffer.getLong(offset + 8);
+            same = (_buffer.getLong(offset) ^ current) == key;
+        }
+        if(same && TranspositionTable.depth(current) >= depth)
+            return;
+
+        _buffer.putLong(offset, key ^ entry);
+        _buffer.putLong(offset + 8, entry);
+    }
+
+    /**
+     * Writes the entries to the disk, which the operating system otherwise
+     * does in its own time.
+     */
+    public void force() {
+        _buffer.force();
+    }
+
+    private long offsetOf(long key) {
+        if(_bucketBits == 0)
+            return HEADER_BYTES;
+        long bucket = (key * 0x9E3779B97F4A7C15L) >>> (64 - _bucketBits);
+        return HEADER_BYTES + bucket * 2 * BYTES_PER_ENTRY;
+    }
+}
@@ -0,0 +1,103 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Plays through an engine served by EngineServer, one session per
+ * instance. Created without arguments, for example by ShowGame or Arena,
+ * it connects to the address in the gamelogic.server system property,
+ * which defaults to EngineServer's port on the loopback interface.
+ *
+ * Failures of the connection are thrown as UncheckedIOException and
+ * errors reported by the server as IllegalStateException.
+ */
+public class RemoteGameLogic implements IGameLogic {
+    private final SocketChannel _channel;
+    private final BufferedReader _in;
+    private final PrintWriter _out;
+
+    public RemoteGameLogic() {
+        this(EngineServer.parseAddress(System.getProperty("gamelogic.server", Integer.toString(EngineServer.DEFAULT_PORT))));
+    }
+
+    /**
+     * @param address The address of the server, see EngineServer.parseAddress().
+     */
+    public RemoteGameLogic(SocketAddress address) {
+        try {
+            _channel = SocketChannel.open(address);
+            if(!(address instanceof UnixDomainSocketAddress))
+                _channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not connect to " + address, e);
+        }
+        _in = new BufferedReader(Channels.newReader(_channel, StandardCharsets.UTF_8));
+        _out = new PrintWriter(Channels.newWriter(_channel, StandardCharsets.UTF_8), true);
+    }
+
+    public void initializeGame(int columns, int rows, int player) {
+        request("init " + columns + " " + rows + " " + player, "ok");
+    }
+
+    public void insertCoin(int column, int playerID) {
+        request("insert " + column + " " + playerID, "ok");
+    }
+
+    public int decideNextMove() {
+        return Integer.parseInt(request("decide", "move"));
+    }
+
+    public Winner gameFinished() {
+        return Winner.valueOf(request("finished", "winner"));
+    }
+
+    /**
+     * Ends the session, which also releases the engine on the server.
+     */
+    @Override
+    public void close() {
+        try {
+            if(_channel.isOpen())
+                request("quit", "bye");
+        } catch (RuntimeException ignored) {
+            // The session is closed below either way
+        } finally {
+            try {
+                _channel.close();
+            } catch (IOException ignored) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    /**
+     * Sends the request and waits for the reply.
+     * @param expected The first word of the reply.
+     * @return The rest of the reply.
+     */
+    private synchronized String request(String request, String expected) {
+        String reply;
+        try {
+            _out.println(request);
+            if(_out.checkError())
+                throw new IOException("Could not send the request");
+            reply = _in.readLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException("The connection to the server failed", e);
+        }
+        if(reply == null)
+            throw new UncheckedIOException(new IOException("The server closed the session"));
+        if(reply.equals(expected))
+            return "";
+        if(reply.startsWith(expected + " "))
+            return reply.substring(expected.length() + 1);
+        throw new IllegalStateException("The server could not do \"" + request + "\": " + reply);
+    }
+}
@@ -0,0 +1,433 @@
+/**
+ * Depth-limited alpha-beta search for one player, working on its own copy
+ * of the game state. Several searches may run in parallel on the same
+ * transposition table, which is how GameLogic spreads a decision over
+ * more than one core.
+ *
+ * The search is a negamax with principal variation search: the first
+ * move of a node is searched with the full window and the others with a
+ * null window, so scores in the table are from the side of the player to
+ * move at the node. Each iteration starts with an aspiration window.
+ *
+ * With a PositionCache set, nodes searched at least PositionCache.MIN_DEPTH
+ * deep look up the cache when the table has nothing deep enough, copying
+ * hits into the table, and exact results that deep are written to it.
+ *
+ * Moves are tried in the order: transposition table move, the two killer
+ * moves of the ply, then by history score, with ties going to the columns
+ * closest to the center. Immediate wins and forced blocks are found
+ * before any move is searched.
+ */
+public class Search {
+    public static final int WIN_SCORE = 10000;
+    private static final int INFINITY = Integer.MAX_VALUE;
+    private static final int TT_MOVE_ORDER = 1 << 30;
+    private static final int KILLER_ORDER = 1 << 29;
+    private static final int HISTORY_LIMIT = 1 << 24;
+    /** Half the width of the first window around the expected score, in evaluation units. */
+    private static final double ASPIRATION_WINDOW = 2.5;
+
+    private final GameState _state;
+    private final TranspositionTable _transpositionTable;
+    private final SearchControl _control;
+    private final int _cols;
+    private final int _rows;
+    private final int _playerId;
+    private final int _otherPlayerId;
+    private int _cutoff;
+    private int _score;
+    private boolean _hasScore;
+    private int _partialMove;
+    private final SearchStats _stats = new SearchStats();
+    private final int[] _centerOrder;
+    private final int[][] _moveLists;
+    private final int[][] _moveOrders;
+    private final int[][] _killers;
+    private final int[][] _history;
+    private PositionCache _positionCache;
+
+    /**
+     * @param state The position to search from. The search keeps its own copy.
+     * @param transpositionTable The table to share with other searches.
+     * @param playerId The player to move in the position.
+     */
+    public Search(GameState state, TranspositionTable transpositionTable, int playerId) {
+        this(state, transpositionTable, playerId, new SearchControl());
+    }
+
+    /**
+     * @param control Stops the search, shared with the other searches of a decision.
+     */
+    public Search(GameState state, TranspositionTable transpositionTable, int playerId, SearchControl control) {
+        _state = state.copy();
+        _state.resetUndoStack();
+        _transpositionTable = transpositionTable;
+        _control = control;
+        _cols = state.getColumnCount();
+        _rows = state.getRowCount();
+        _playerId = playerId;
+        _otherPlayerId = playerId == 1 ? 2 : 1;
+
+        // 3, 2, 4, 1, 5, 0, 6 on seven columns
+        _centerOrder = new int[_cols];
+        for(int i = 0; i < _cols; i++)
+            _centerOrder[i] = _cols / 2 + (1 - 2 * (i % 2)) * (i + 1) / 2;
+
+        int maxPly = _cols * _rows + 1;
+        _moveLists = new int[maxPly][_cols];
+        _moveOrders = new int[maxPly][_cols];
+        _killers = new int[maxPly][2];
+        for(int[] killers : _killers)
+            killers[0] = killers[1] = -1;
+        _history = new int[2][_cols * _rows];
+    }
+
+    /**
+     * Looks up and keeps deep exact results in the cache, or not if it is
+     * null. Ignored on boards without exact keys.
+     */
+    public void setPositionCache(PositionCache cache) {
+        _positionCache = _state.hasExactKeys() ? cache : null;
+    }
+
+    /**
+     * @return The number of positions visited since the search was created.
+     */
+    public long getNodes() {
+        return _stats.nodes;
+    }
+
+    /**
+     * @return The counters of this search, updated as it runs.
+     */
+    public SearchStats getStats() {
+        return _stats;
+    }
+
+    /**
+     * @return The score of the move returned by the last minimax() that completed.
+     */
+    public int getScore() {
+        return _score;
+    }
+
+    /**
+     * Root moves are searched with the previous best move from the table
+     * first, so once that one is done, the best of the moves searched so
+     * far is at least as good as the one of the shallower iteration.
+     * @return The best move of the last minimax() among the root moves it
+     *         finished with an exact score, or -1 if the table move has
+     *         none in the current aspiration pass.
+     */
+    public int getPartialMove() {
+        return _partialMove;
+    }
+
+    /**
+     * Searches every column to the given depth.
+     *
+     * The search starts with an aspiration window around the score of the
+     * previous iteration, or of the root's table entry, and only searches
+     * again with an open window if the score falls outside of it.
+     * @param cutoff The number of plies searched below the root moves.
+     * @return The best column, or -1 if the board is full.
+     * @throws InterruptedException If the control stopped the search.
+     */
+    public int minimax(int cutoff) throws InterruptedException {
+        _cutoff = cutoff;
+        _partialMove = -1;
+
+        int wins = _state.getWinningColumns(_playerId);
+        if(wins != 0) {
+            _score = WIN_SCORE;
+            _hasScore = true;
+            _partialMove = Integer.numberOfTrailingZeros(wins);
+            return _partialMove;
+        }
+
+        long key = _state.getCanonicalKey();
+        boolean mirrored = _state.isCanonicalMirrored();
+        long entry = probe(key, cutoff + 1);
+        int tableMove = moveOf(entry, mirrored);
+        int count = orderMoves(0, tableMove, _state.getWinningColumns(_otherPlayerId), _playerId);
+
+        int a = -INFINITY;
+        int b = INFINITY;
+        int guess = _hasScore ? _score : entry != TranspositionTable.NO_ENTRY ? TranspositionTable.score(entry) : WIN_SCORE;
+        if(Math.abs(guess) < WIN_SCORE) {
+            int window = (int) Math.ceil(ASPIRATION_WINDOW * _state.getEvaluationUnit());
+            a = guess - window;
+            b = guess + window;
+        }
+
+        int columnToPlay;
+        while(true) {
+            columnToPlay = searchRoot(count, tableMove, a, b);
+            if(_score <= a && a != -INFINITY)
+                a = -INFINITY;
+            else if(_score >= b && b != INFINITY)
+                b = INFINITY;
+            else
+                break;
+            _stats.aspirationResearches++;
+        }
+
+        _hasScore = true;
+        _partialMove = columnToPlay;
+        if(columnToPlay >= 0)
+            storeResult(key, mirrored, _score, cutoff + 1, TranspositionTable.EXACT, columnToPlay);
+        return columnToPlay;
+    }
+
+    /**
+     * Searches the root moves of the list, the first with the window and
+     * the others with a null window that is widened only if they beat it.
+     * Sets _score to the best score, which is only a bound if it falls
+     * outside of (a, b). The partial move is the best move so far, kept
+     * only while its score is exact: the table move's score lies inside
+     * (a, b) and every move that replaced it did too. A pass that fails
+     * low leaves none.
+     * @return The best column.
+     */
+    private int searchRoot(int count, int tableMove, int a, int b) throws InterruptedException {
+        int[] moves = _moveLists[0];
+        boolean tableMoveFirst = count > 0 && moves[0] == tableMove;
+        boolean exact = false;
+        _partialMove = -1;
+        int result = -INFINITY;
+        int columnToPlay = -1;
+        for(int i = 0; i < count; i++)
+        {
+            int c = moves[i];
+            _state.addCoin(c, _playerId);
+            int score = searchChild(i, a, b, 0, _otherPlayerId);
+            _state.undoAddCoin();
+
+            if(i == 0)
+                exact = tableMoveFirst && score > a && score < b;
+            if(exact && score > a && score < b)
+                _partialMove = c;
+            if(score > result || columnToPlay < 0) {
+                columnToPlay = c;
+                result = score;
+            }
+            if(result >= b)
+                break;
+            a = Math.max(a, result);
+        }
+        _score = result;
+        return columnToPlay;
+    }
+
+    /**
+     * Principal variation search of a move that has just been played: the
+     * first move of a node gets the full window, the others a null window
+     * proving they are no better, and a full one only if they are.
+     * @param index The position of the move in its move list.
+     * @return The score from the side of the player who played the move.
+     */
+    private int searchChild(int index, int a, int b, int depth, int playerId) throws InterruptedException {
+        if(index == 0)
+            return -negamax(-b, -a, depth, playerId);
+        int score = -negamax(-a - 1, -a, depth, playerId);
+        if(score > a && score < b) {
+            _stats.pvsResearches++;
+            score = -negamax(-b, -score, depth, playerId);
+        }
+        return score;
+    }
+
+    /**
+     * Alpha-beta search of the position with the player to move. Scores,
+     * also the ones in the transposition table, are from the side of the
+     * player to move.
+     * @param depth The plies played below the root moves.
+     */
+    private int negamax(int a, int b, int depth, int playerId) throws InterruptedException {
+        _control.check(_stats.nodes);
+        _stats.nodes++;
+        int otherPlayerId = 3 - playerId;
+
+        // Only the player who just moved can have four in a row
+        if(_state.hasFourInARow(otherPlayerId))
+            return -WIN_SCORE;
+        if(_state.isBoardFull())
+            return 0;
+
+        // We win now, or the opponent threatens two cells and we can block only one
+        if(_state.getWinningColumns(playerId) != 0)
+            return WIN_SCORE;
+        int forced = _state.getWinningColumns(otherPlayerId);
+        if(Integer.bitCount(forced) > 1)
+            return -WIN_SCORE;
+
+        int remainingDepth = _cutoff - depth;
+        long key = _state.getCanonicalKey();
+        boolean mirrored = _state.isCanonicalMirrored();
+        long entry = probe(key, remainingDepth);
+        if(entry == TranspositionTable.NO_ENTRY)
+            _stats.tableMisses++;
+        else
+            _stats.tableHits++;
+        if(entry != TranspositionTable.NO_ENTRY && TranspositionTable.depth(entry) >= remainingDepth) {
+            int score = TranspositionTable.score(entry);
+            int bound = TranspositionTable.bound(entry);
+            if(bound == TranspositionTable.LOWER_BOUND)
+                a = Math.max(a, score);
+            else if(bound == TranspositionTable.UPPER_BOUND)
+                b = Math.min(b, score);
+            if(bound == TranspositionTable.EXACT || a >= b) {
+                _stats.tableCutoffs++;
+                return score;
+            }
+        }
+
+        if (depth >= _cutoff)
+            return boardEvaluation(playerId);
+
+        int ply = depth + 1;
+        depth++;
+
+        int count = orderMoves(ply, moveOf(entry, mirrored), forced, playerId);
+        int originalA = a;
+        int result = -INFINITY;
+        int bestMove = -1;
+        for(int i = 0; i < count; i++)
+        {
+            int c = _moveLists[ply][i];
+            _state.addCoin(c, playerId);
+            int score = searchChild(i, a, b, depth, otherPlayerId);
+            _state.undoAddCoin();
+
+            if(score > result || bestMove < 0) {
+                result = score;
+                bestMove = c;
+            }
+            if (result >= b) {
+                recordCutoff(ply, i, c, playerId, remainingDepth);
+                storeResult(key, mirrored, result, remainingDepth, TranspositionTable.LOWER_BOUND, bestMove);
+                return result;
+            }
+            a = Math.max(a, result);
+        }
+
+        int bound = result <= originalA ? TranspositionTable.UPPER_BOUND : TranspositionTable.EXACT;
+        storeResult(key, mirrored, result, remainingDepth, bound, bestMove);
+        return result;
+    }
+
+    /**
+     * Fills the move list of the ply with the playable columns in the order
+     * they should be searched.
+     * @param tableMove The move from the transposition table, or -1.
+     * @param forcedColumns If not 0, only these columns are considered.
+     * @return The number of moves in the list.
+     */
+    private int orderMoves(int ply, int tableMove, int forcedColumns, int playerId) {
+        int[] moves = _moveLists[ply];
+        int[] orders = _moveOrders[ply];
+        int[] killers = _killers[ply];
+        int[] history = _history[playerId - 1];
+
+        int count = 0;
+        for(int i = 0; i < _cols; i++) {
+            int c = _centerOrder[i];
+            int row = _state.getCoinsInColumn(c);
+            if(row >= _rows || (forcedColumns != 0 && (forcedColumns & (1 << c)) == 0))
+                continue;
+
+            int order;
+            if(c == tableMove)
+                order = TT_MOVE_ORDER;
+            else if(c == killers[0])
+                order = KILLER_ORDER + 1;
+            else if(c == killers[1])
+                order = KILLER_ORDER;
+            else
+                order = history[c * _rows + row];
+
+            // Insertion sort, stable so equal orders keep the center-out order
+            int j = count++;
+            for(; j > 0 && orders[j - 1] < order; j--) {
+                moves[j] = moves[j - 1];
+                orders[j] = orders[j - 1];
+            }
+            moves[j] = c;
+            orders[j] = order;
+        }
+        return count;
+    }
+
+    /**
+     * Remembers a move that caused a cutoff as a killer of its ply and
+     * raises its history score. Called after the move is undone.
+     * @param index The position of the move in the move list.
+     */
+    private void recordCutoff(int ply, int index, int column, int playerId, int remainingDepth) {
+        _stats.betaCutoffs++;
+        if(index == 0)
+            _stats.firstMoveCutoffs++;
+
+        int[] killers = _killers[ply];
+        if(killers[0] != column) {
+            killers[1] = killers[0];
+            killers[0] = column;
+        }
+
+        int[] history = _history[playerId - 1];
+        int cell = column * _rows + _state.getCoinsInColumn(column);
+        history[cell] += remainingDepth * remainingDepth;
+        if(history[cell] > HISTORY_LIMIT)
+            for(int i = 0; i < history.length; i++)
+                history[i] /= 2;
+    }
+
+    private int moveOf(long entry, boolean mirrored) {
+        if(entry == TranspositionTable.NO_ENTRY)
+            return -1;
+        int move = TranspositionTable.move(entry);
+        return mirrored && move >= 0 ? _state.mirrorColumn(move) : move;
+    }
+
+    /**
+     * @param depth The depth the entry is needed for.
+     * @return The table's entry, or the cache's if the table has none that
+     *         deep and the cache has a deeper one.
+     */
+    private long probe(long key, int depth) {
+        long entry = _transpositionTable.probe(key);
+        if(_positionCache == null || depth < PositionCache.MIN_DEPTH
+                || (entry != TranspositionTable.NO_ENTRY && TranspositionTable.depth(entry) >= depth))
+            return entry;
+
+        long cached = _positionCache.probe(key);
+        if(cached == TranspositionTable.NO_ENTRY
+                || (entry != TranspositionTable.NO_ENTRY && TranspositionTable.depth(cached) <= TranspositionTable.depth(entry)))
+            return entry;
+        _stats.cacheHits++;
+        _transpositionTable.store(key, TranspositionTable.score(cached), TranspositionTable.depth(cached),
+                TranspositionTable.EXACT, TranspositionTable.move(cached));
+        return cached;
+    }
+
+    /**
+     * Moves are stored in the orientation of the canonical key.
+     */
+    private void storeResult(long key, boolean mirrored, int score, int depth, int bound, int bestMove) {
+        if(mirrored)
+            bestMove = _state.mirrorColumn(bestMove);
+        if(_transpositionTable.store(key, score, depth, bound, bestMove))
+            _stats.tableCollisions++;
+        if(_positionCache != null && bound == TranspositionTable.EXACT && depth >= PositionCache.MIN_DEPTH)
+            _positionCache.store(key, score, depth, bestMove);
+    }
+
+    /**
+     * Scores are in the same unit as WIN_SCORE, which always outweighs them.
+     * @return GameState's evaluation from the player's point of view.
+     */
+    private int boardEvaluation(int playerId) {
+        int score = _state.getEvaluation();
+        return playerId == 1 ? score : -score;
+    }
+}
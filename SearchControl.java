@@ -0,0 +1,62 @@
+/**
+ * Tells running searches when to stop. Search and Solver poll it every
+ * CHECK_INTERVAL nodes and unwind with an InterruptedException once it
+ * is stopped, either by stop() or because the deadline has passed. The
+ * threads themselves are never interrupted, so one control can be
+ * started again for the next decision.
+ */
+public class SearchControl {
+    /** Nodes between two checks, a power of two. */
+    public static final int CHECK_INTERVAL = 1024;
+
+    private volatile boolean _stopped;
+    private volatile long _deadline = Long.MAX_VALUE;
+
+    /**
+     * Clears the stop flag and sets the time the searches may take.
+     * @param timeMs The time budget from now, or 0 for no deadline.
+     */
+    public void start(long timeMs) {
+        _deadline = timeMs > 0 ? System.nanoTime() + timeMs * 1000000 : Long.MAX_VALUE;
+        _stopped = false;
+    }
+
+    /**
+     * Like start(), but a budget that is already spent stops the searches
+     * at their first check instead of meaning no deadline.
+     * @param timeMs The time left from now, possibly 0 or negative.
+     */
+    public void startDeadline(long timeMs) {
+        start(Math.max(1, timeMs));
+    }
+
+    /**
+     * Makes the searches stop at their next check.
+     */
+    public void stop() {
+        _stopped = true;
+    }
+
+    /**
+     * @return true once stop() was called or the deadline has passed.
+     */
+    public boolean isStopped() {
+        if(_stopped)
+            return true;
+        long deadline = _deadline;
+        if(deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0) {
+            _stopped = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called by the searches with their node counter.
+     * @throws InterruptedException If the search has to stop.
+     */
+    public void check(long nodes) throws InterruptedException {
+        if((nodes & (CHECK_INTERVAL - 1)) == 0 && isStopped())
+            throw new InterruptedException("Search stopped");
+    }
+}
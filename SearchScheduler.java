@@ -0,0 +1,85 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The search threads of one GameLogic, started once and reused for every
+ * decision and ponder search until close(). Tasks are expected to stop by
+ * themselves through their SearchControl; they are never interrupted.
+ */
+public class SearchScheduler {
+    private final ExecutorService _executor;
+    private final int _threadCount;
+    private final List<Future<?>> _tasks = new ArrayList<Future<?>>();
+
+    /**
+     * @param threads The most tasks that run at the same time.
+     * @param name The name of the threads.
+     */
+    public SearchScheduler(int threads, final String name) {
+        _threadCount = threads;
+        _executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int _count;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + ++_count);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public int getThreadCount() {
+        return _threadCount;
+    }
+
+    /**
+     * Starts the task on a free thread, or once one is free.
+     */
+    public void submit(Runnable task) {
+        _tasks.add(_executor.submit(task));
+    }
+
+    /**
+     * Waits for every task submitted since the last call. If the waiting
+     * thread is interrupted the control is stopped, so the wait stays short,
+     * and the interrupt is passed on.
+     * @param control The control of the tasks.
+     * @throws IllegalStateException If a task threw.
+     */
+    public void awaitAll(SearchControl control) {
+        boolean interrupted = false;
+        try {
+            for(Future<?> task : _tasks) {
+                while(true) {
+                    try {
+                        task.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        control.stop();
+                    } catch (ExecutionException e) {
+                        control.stop();
+                        throw new IllegalStateException("A search task failed.", e.getCause());
+                    }
+                }
+            }
+        } finally {
+            _tasks.clear();
+            if(interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Lets the threads end once their tasks have stopped.
+     */
+    public void close() {
+        _executor.shutdown();
+    }
+}
@@ -0,0 +1,331 @@
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counters of one search, or of all searches of a move once merged.
+ * Each Search thread counts into its own instance, so counting needs no
+ * synchronization. GameLogic merges them and adds the iterations when a
+ * move is decided. The same numbers are committed as JFR events, which
+ * are cheap unless a flight recording is running. Creating the first
+ * event loads JFR, a few hundred milliseconds, so GameLogic calls
+ * loadEvents() when it is created rather than in its first search.
+ */
+public class SearchStats {
+    private static boolean _eventsLoaded;
+
+    long nodes;
+    long betaCutoffs;
+    long firstMoveCutoffs;
+    long tableHits;
+    long tableMisses;
+    long tableCutoffs;
+    long tableCollisions;
+    long cacheHits;
+    long pvsResearches;
+    long aspirationResearches;
+    long solverNodes;
+    private boolean _solved;
+    private int _solvedScore;
+    private boolean _ponderHit;
+    private int _ponderDepth;
+    private long _ponderNodes;
+    private final List<Iteration> _iterations = new ArrayList<Iteration>();
+    private int _threads;
+    private int _decision = -1;
+    private long _elapsedMs;
+
+    /**
+     * An iterative deepening iteration that completed as the deepest so far.
+     */
+    public static class Iteration {
+        private final int _depth;
+        private final long _elapsedMs;
+        private final long _nodes;
+        private final int _bestMove;
+
+        Iteration(int depth, long elapsedMs, long nodes, int bestMove) {
+            _depth = depth;
+            _elapsedMs = elapsedMs;
+            _nodes = nodes;
+            _bestMove = bestMove;
+        }
+
+        public int getDepth() {
+            return _depth;
+        }
+
+        /** @return The time from the start of the move until the iteration completed. */
+        public long getElapsedMs() {
+            return _elapsedMs;
+        }
+
+        /** @return The nodes the completing thread visited in this iteration. */
+        public long getNodes() {
+            return _nodes;
+        }
+
+        public int getBestMove() {
+            return _bestMove;
+        }
+    }
+
+    @Name("gamelogic.SearchIteration")
+    @Label("Search Iteration")
+    @Category("GameLogic")
+    static class IterationEvent extends Event {
+        @Label("Depth") int depth;
+        @Label("Nodes") long nodes;
+        @Label("Best Move") int bestMove;
+    }
+
+    @Name("gamelogic.MoveDecision")
+    @Label("Move Decision")
+    @Category("GameLogic")
+    static class MoveEvent extends Event {
+        @Label("Decision") int decision;
+        @Label("Depth") int depth;
+        @Label("Nodes") long nodes;
+        @Label("Threads") int threads;
+        @Label("Beta Cutoffs") long betaCutoffs;
+        @Label("First Move Cutoffs") long firstMoveCutoffs;
+        @Label("Table Hits") long tableHits;
+        @Label("Table Misses") long tableMisses;
+        @Label("Table Collisions") long tableCollisions;
+        @Label("Position Cache Hits") long cacheHits;
+        @Label("PVS Re-searches") long pvsResearches;
+        @Label("Aspiration Re-searches") long aspirationResearches;
+        @Label("Solver Nodes") long solverNodes;
+        @Label("Solved") boolean solved;
+    }
+
+    /**
+     * Loads the event classes, once per process.
+     */
+    static synchronized void loadEvents() {
+        if(_eventsLoaded)
+            return;
+        new IterationEvent().shouldCommit();
+        new MoveEvent().shouldCommit();
+        _eventsLoaded = true;
+    }
+
+    void add(SearchStats other) {
+        nodes += other.nodes;
+        betaCutoffs += other.betaCutoffs;
+        firstMoveCutoffs += other.firstMoveCutoffs;
+        tableHits += other.tableHits;
+        tableMisses += other.tableMisses;
+        tableCutoffs += other.tableCutoffs;
+        tableCollisions += other.tableCollisions;
+        cacheHits += other.cacheHits;
+        pvsResearches += other.pvsResearches;
+        aspirationResearches += other.aspirationResearches;
+        solverNodes += other.solverNodes;
+    }
+
+    /**
+     * Marks the move as decided by the solver.
+     * @param score The solver's score of the position, see Solver.
+     */
+    void setSolved(int score) {
+        _solved = true;
+        _solvedScore = score;
+    }
+
+    /**
+     * Records the ponder search that ran on the opponent's time before the move.
+     * @param depth The deepest ponder iteration that completed, if it was a hit.
+     */
+    void setPonder(boolean hit, int depth, long nodes) {
+        _ponderHit = hit;
+        _ponderDepth = depth;
+        _ponderNodes = nodes;
+    }
+
+    void addIteration(Iteration iteration) {
+        _iterations.add(iteration);
+    }
+
+    void finish(int decision, int threads, long elapsedMs) {
+        _decision = decision;
+        _threads = threads;
+        _elapsedMs = elapsedMs;
+
+        MoveEvent event = new MoveEvent();
+        if(event.shouldCommit()) {
+            event.decision = decision;
+            event.depth = getDepth();
+            event.nodes = nodes;
+            event.threads = threads;
+            event.betaCutoffs = betaCutoffs;
+            event.firstMoveCutoffs = firstMoveCutoffs;
+            event.tableHits = tableHits;
+            event.tableMisses = tableMisses;
+            event.tableCollisions = tableCollisions;
+            event.cacheHits = cacheHits;
+            event.pvsResearches = pvsResearches;
+            event.aspirationResearches = aspirationResearches;
+            event.solverNodes = solverNodes;
+            event.solved = _solved;
+            event.commit();
+        }
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getBetaCutoffs() {
+        return betaCutoffs;
+    }
+
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    public long getTableHits() {
+        return tableHits;
+    }
+
+    public long getTableMisses() {
+        return tableMisses;
+    }
+
+    /** @return The table hits deep enough to end the search of the node. */
+    public long getTableCutoffs() {
+        return tableCutoffs;
+    }
+
+    /** @return The stores that evicted another position from the table. */
+    public long getTableCollisions() {
+        return tableCollisions;
+    }
+
+    /** @return The positions found in the PositionCache and not in the table. */
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    /** @return The null-window searches that failed high and were searched again. */
+    public long getPvsResearches() {
+        return pvsResearches;
+    }
+
+    /** @return The root searches that fell outside the aspiration window. */
+    public long getAspirationResearches() {
+        return aspirationResearches;
+    }
+
+    public long getSolverNodes() {
+        return solverNodes;
+    }
+
+    /**
+     * @return true if the solver found the exact score in time.
+     */
+    public boolean isSolved() {
+        return _solved;
+    }
+
+    public int getSolvedScore() {
+        return _solvedScore;
+    }
+
+    /**
+     * @return true if the opponent played the reply the engine pondered on.
+     */
+    public boolean isPonderHit() {
+        return _ponderHit;
+    }
+
+    public int getPonderDepth() {
+        return _ponderDepth;
+    }
+
+    public long getPonderNodes() {
+        return _ponderNodes;
+    }
+
+    public List<Iteration> getIterations() {
+        return _iterations;
+    }
+
+    public int getThreads() {
+        return _threads;
+    }
+
+    public int getDecision() {
+        return _decision;
+    }
+
+    public long getElapsedMs() {
+        return _elapsedMs;
+    }
+
+    /**
+     * @return The depth of the deepest completed iteration, or 0.
+     */
+    public int getDepth() {
+        return _iterations.isEmpty() ? 0 : _iterations.get(_iterations.size() - 1).getDepth();
+    }
+
+    /**
+     * @return The share of beta cutoffs caused by the first move searched.
+     */
+    public double getFirstMoveCutoffRatio() {
+        return betaCutoffs == 0 ? 0 : (double) firstMoveCutoffs / betaCutoffs;
+    }
+
+    public double getTableHitRate() {
+        long probes = tableHits + tableMisses;
+        return probes == 0 ? 0 : (double) tableHits / probes;
+    }
+
+    /**
+     * @return Nodes of the last completed iteration divided by the nodes
+     *         of the one before, or 0 with fewer than two iterations.
+     */
+    public double getEffectiveBranchingFactor() {
+        int count = _iterations.size();
+        if(count < 2 || _iterations.get(count - 2).getNodes() == 0)
+            return 0;
+        return (double) _iterations.get(count - 1).getNodes() / _iterations.get(count - 2).getNodes();
+    }
+
+    public long getNodesPerSecond() {
+        return nodes * 1000 / Math.max(1, _elapsedMs);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("Decision: %d at depth %d in %d ms (%d threads)%n",
+                _decision, getDepth(), _elapsedMs, _threads));
+        result.append(String.format("Nodes: %d (%d nodes/s), EBF %.2f%n",
+                nodes, getNodesPerSecond(), getEffectiveBranchingFactor()));
+        result.append(String.format("Cutoffs: %d, %.1f%% on the first move%n",
+                betaCutoffs, 100 * getFirstMoveCutoffRatio()));
+        result.append(String.format("Table: %.1f%% hits, %d cutoffs, %d collisions%n",
+                100 * getTableHitRate(), tableCutoffs, tableCollisions));
+        if(cacheHits > 0)
+            result.append(String.format("Position cache: %d hits%n", cacheHits));
+        result.append(String.format("Re-searches: %d null window, %d aspiration%n",
+                pvsResearches, aspirationResearches));
+        if(_ponderNodes > 0)
+            result.append(String.format("Ponder: %s, %d nodes on the opponent's time%n",
+                    _ponderHit ? "hit at depth " + _ponderDepth : "miss", _ponderNodes));
+        if(_solved)
+            result.append(String.format("Solved: score %d after %d solver nodes%n", _solvedScore, solverNodes));
+        else if(solverNodes > 0)
+            result.append(String.format("Not solved after %d solver nodes%n", solverNodes));
+        for(Iteration iteration : _iterations)
+            result.append(String.format("  depth %2d: %6d ms %12d nodes  move %d%n",
+                    iteration.getDepth(), iteration.getElapsedMs(), iteration.getNodes(), iteration.getBestMove()));
+        return result.toString();
+    }
+}
@@ -14,6 +14,8 @@
 
 
 import javax.swing.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.net.URLClassLoader;
 import java.lang.reflect.*;
 
@@ -92,13 +94,18 @@ public class ShowGame
             player2.initializeGame(cols,rows,2);
         }
         
-        FourConnectGUI g = new FourConnectGUI(player1,player2,cols,rows);
+        final FourConnectGUI g = new FourConnectGUI(player1,player2,cols,rows);
         
         // Setup of the frame containing the game
         JFrame f = new JFrame();
         f.setSize(1000,800);
         f.setTitle("Four Connect");
         f.setDefaultCloseOperation (JFrame.EXIT_ON_CLOSE);
+        f.addWindowListener(new WindowAdapter() {
+            public void windowClosing(WindowEvent e) {
+                g.close();
+            }
+        });
         f.getContentPane().add(g);    
         f.setVisible(true);
     }
@@ -0,0 +1,117 @@
+/**
+ *
+ * Builds the table of solved positions read by Solver. Every position
+ * reachable in up to the given number of plies is solved exactly and its
+ * score stored under the position's canonical key:
+ *
+ *     java SolvedTableGenerator plies [file cols rows]
+ *
+ * These early positions are the ones that take the solver longest; late
+ * positions solve in milliseconds and are far too many to store. Positions
+ * are solved in parallel on one shared transposition table, which is safe
+ * because solver scores do not depend on who searches.
+ *
+ */
+
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SolvedTableGenerator
+{
+    private static final int TABLE_MEGABYTES = Integer.getInteger("gamelogic.ttMegabytes", 64);
+
+    /**
+     * Valid arguments: plies [file cols rows]
+     * standard values are solved.table on 7x6
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if(args.length < 1) {
+            printHelp("");
+            System.exit(1);
+        }
+
+        int plies = 0;
+        String file = "solved.table";
+        int cols = 7;
+        int rows = 6;
+        try {
+            plies = Integer.parseInt(args[0]);
+            if(args.length >= 2) file = args[1];
+            if(args.length >= 3) cols = Integer.parseInt(args[2]);
+            if(args.length >= 4) rows = Integer.parseInt(args[3]);
+        } catch(NumberFormatException nfe) {
+            printHelp("Could not parse number: " + nfe.getMessage());
+            System.exit(1);
+        }
+        if(!Solver.supports(cols, rows)) {
+            printHelp("The solver does not support " + cols + "x" + rows + ".");
+            System.exit(1);
+        }
+
+        long startTime = System.nanoTime();
+        List<GameState> positions = OpeningBookGenerator.collectPositions(cols, rows, plies);
+        System.out.format("%d positions up to ply %d%n", positions.size(), plies);
+
+        long[] keys = new long[positions.size()];
+        byte[] scores = new byte[positions.size()];
+        solvePositions(positions, keys, scores);
+
+        MappedPositionTable.write(Paths.get(file), cols, rows, plies, keys, scores);
+        System.out.format("%nWrote %s in %.1f s%n", file, (System.nanoTime() - startTime) / 1e9);
+    }
+
+    public static void printHelp(String errMsg) {
+        if(!errMsg.equals("")) {
+            System.err.println(errMsg);
+        }
+        System.err.println("Usage: java SolvedTableGenerator plies [file cols rows]");
+        System.err.println("\tplies\t - Positions with up to this many coins are put in the table.");
+        System.err.println("\tfile\t - The table to write, defaults to solved.table.");
+        System.err.println("\tcols/rows\t - Board size, defaults to 7 and 6.");
+    }
+
+    /**
+     * Solves the positions from the most coins to the fewest, so the
+     * table fills with the endings of the slower early positions first.
+     */
+    private static void solvePositions(final List<GameState> positions, final long[] keys, final byte[] scores) throws Exception {
+        final TranspositionTable table = new TranspositionTable(TABLE_MEGABYTES);
+        final SearchControl control = new SearchControl();
+        final AtomicInteger done = new AtomicInteger();
+        int threads = Integer.getInteger("gamelogic.threads", Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+        for(int i = positions.size() - 1; i >= 0; i--) {
+            final int index = i;
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    GameState state = positions.get(index);
+                    Solver solver = new Solver(state.getColumnCount(), state.getRowCount(), table, null, control);
+                    scores[index] = (byte) solver.solve(state);
+                    keys[index] = state.getCanonicalKey();
+                    int count = done.incrementAndGet();
+                    if(count % 100 == 0 || count == positions.size())
+                        System.out.format("\r%d/%d solved", count, positions.size());
+                    return null;
+                }
+            }));
+        }
+        try {
+            for(Future<Void> future : futures)
+                future.get();
+        } catch(ExecutionException ee) {
+            throw (Exception) ee.getCause();
+        } finally {
+            // Stops the running solvers if one of them failed
+            control.stop();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/**
+ * Exact solver for boards that fit BitboardGameState. The position is
+ * held in two longs, the coins of the player to move and the occupied
+ * cells, and searched with negamax to the end of the game.
+ *
+ * Scores count how early the game is won: a player who wins with their
+ * k-th coin of the game scores (cols * rows + 1) / 2 + 1 - k, the opponent
+ * the negation, and a draw is 0. solve() narrows the score down with
+ * null-window searches, testing 0 first so that the win/draw/loss answer
+ * comes before the exact distance.
+ *
+ * Only moves that do not hand the opponent an immediate win are searched,
+ * ordered by the number of winning cells they create. Bounds are kept in a
+ * TranspositionTable under the collision-free key coins + occupied, and a
+ * MappedPositionTable of solved early positions answers the searches that
+ * would take longest.
+ */
+public class Solver {
+    private final int _cols;
+    private final int _rows;
+    private final int _height;
+    private final int _cells;
+    private final long _bottomMask;
+    private final long _boardMask;
+    private final long _columnMask;
+    private final int[] _centerOrder;
+    private final TranspositionTable _transpositionTable;
+    private final MappedPositionTable _solvedTable;
+    private final SearchControl _control;
+    private final int[][] _moveLists;
+    private final int[][] _moveOrders;
+    private long _nodes;
+    private int _lastScore;
+
+    /**
+     * @param transpositionTable The table for the bounds, only shared with
+     *                           other solvers of the same board size.
+     * @param solvedTable Exact scores from SolvedTableGenerator, or null.
+     */
+    public Solver(int cols, int rows, TranspositionTable transpositionTable, MappedPositionTable solvedTable) {
+        this(cols, rows, transpositionTable, solvedTable, new SearchControl());
+    }
+
+    /**
+     * @param control Stops solve() and getBestMove() with an InterruptedException.
+     */
+    public Solver(int cols, int rows, TranspositionTable transpositionTable, MappedPositionTable solvedTable,
+                  SearchControl control) {
+        if(!supports(cols, rows))
+            throw new IllegalArgumentException("The solver needs at least 4 columns and cols * (rows + 1) <= 64.");
+
+        _cols = cols;
+        _rows = rows;
+        _height = rows + 1;
+        _cells = cols * rows;
+        long bottomMask = 0;
+        for(int c = 0; c < cols; c++)
+            bottomMask |= 1L << (c * _height);
+        _bottomMask = bottomMask;
+        _boardMask = _bottomMask * ((1L << rows) - 1);
+        _columnMask = (1L << rows) - 1;
+        _transpositionTable = transpositionTable;
+        _solvedTable = solvedTable != null && solvedTable.fits(cols, rows) ? solvedTable : null;
+        _control = control;
+
+        _centerOrder = new int[cols];
+        for(int i = 0; i < cols; i++)
+            _centerOrder[i] = cols / 2 + (1 - 2 * (i % 2)) * (i + 1) / 2;
+
+        _moveLists = new int[_cells + 1][cols];
+        _moveOrders = new int[_cells + 1][cols];
+    }
+
+    /**
+     * Narrower boards have no horizontal lines, which the shifts below
+     * do not allow for.
+     */
+    public static boolean supports(int cols, int rows) {
+        return cols >= 4 && cols * (rows + 1) <= 64;
+    }
+
+    public boolean fits(int cols, int rows) {
+        return _cols == cols && _rows == rows;
+    }
+
+    /**
+     * @return The positions visited since the solver was created.
+     */
+    public long getNodes() {
+        return _nodes;
+    }
+
+    /**
+     * @return The score of the position of the last getBestMove().
+     */
+    public int getLastScore() {
+        return _lastScore;
+    }
+
+    /**
+     * @return The score of the position for the player to move, see the
+     *         class comment. The position must not be finished.
+     */
+    public int solve(GameState state) throws InterruptedException {
+        int moves = state.getCoinCount();
+        long mask = ((BitboardGameState) state).getOccupiedBoard();
+        long current = ((BitboardGameState) state).getPlayerBoard(moves % 2 + 1);
+        return solve(current, mask, moves);
+    }
+
+    /**
+     * Plays the move that keeps the score of solve(): the fastest win, a
+     * draw, or the slowest loss.
+     * @return The column to play. The position must not be finished.
+     */
+    public int getBestMove(GameState state) throws InterruptedException {
+        int moves = state.getCoinCount();
+        long mask = ((BitboardGameState) state).getOccupiedBoard();
+        long current = ((BitboardGameState) state).getPlayerBoard(moves % 2 + 1);
+
+        long wins = winningCells(current, mask) & possible(mask);
+        long next = nonLosingMoves(current, mask);
+        if(wins != 0 || next == 0) {
+            // Win now, or every move loses at once and any move will do.
+            _lastScore = wins != 0 ? (_cells + 1 - moves) / 2 : -(_cells - moves) / 2;
+            long choices = wins != 0 ? wins : possible(mask);
+            for(int c : _centerOrder)
+                if((choices & columnBits(c)) != 0)
+                    return c;
+        }
+
+        int score = solve(current, mask, moves);
+        _lastScore = score;
+        int count = orderMoves(moves, current, mask, next, -1);
+        for(int i = 0; i < count; i++) {
+            long move = next & columnBits(_moveLists[moves][i]);
+            // The child scores at most -score exactly when the move keeps the score.
+            if(negamax(current ^ mask, mask | move, moves + 1, -score, -score + 1) <= -score)
+                return _moveLists[moves][i];
+        }
+        return _moveLists[moves][0];
+    }
+
+    private int solve(long current, long mask, int moves) throws InterruptedException {
+        if((winningCells(current, mask) & possible(mask)) != 0)
+            return (_cells + 1 - moves) / 2;
+
+        int min = -(_cells - moves) / 2;
+        int max = (_cells + 1 - moves) / 2;
+        while(min < max) {
+            int middle = min + (max - min) / 2;
+            // Test the sign first, then move towards the likely side
+            if(middle <= 0 && min / 2 < middle)
+                middle = min / 2;
+            else if(middle >= 0 && max / 2 > middle)
+                middle = max / 2;
+            int score = negamax(current, mask, moves, middle, middle + 1);
+            if(score <= middle)
+                max = score;
+            else
+                min = score;
+        }
+        return min;
+    }
+
+    /**
+     * The player to move must not be able to win at once.
+     * @return The exact score if it lies inside (a, b), else a bound on
+     *         the side of the window it falls.
+     */
+    private int negamax(long current, long mask, int moves, int a, int b) throws InterruptedException {
+        _control.check(_nodes);
+        _nodes++;
+
+        long next = nonLosingMoves(current, mask);
+        if(next == 0)
+            return -(_cells - moves) / 2;
+        if(moves >= _cells - 2)
+            return 0;
+
+        // The opponent can not win on the next move, so the score is at least this
+        int min = -(_cells - 2 - moves) / 2;
+        if(a < min) {
+            a = min;
+            if(a >= b)
+                return a;
+        }
+        // We can not win on the next move either
+        int max = (_cells - 1 - moves) / 2;
+        if(b > max) {
+            b = max;
+            if(a >= b)
+                return b;
+        }
+
+        if(_solvedTable != null && moves <= _solvedTable.getPlies()) {
+            int score = _solvedTable.get(canonicalKey(current, mask, moves));
+            if(score != MappedPositionTable.NO_VALUE)
+                return score;
+        }
+
+        long key = current + mask;
+        long entry = _transpositionTable.probe(key);
+        int tableMove = -1;
+        if(entry != TranspositionTable.NO_ENTRY) {
+            int score = TranspositionTable.score(entry);
+            if(TranspositionTable.bound(entry) == TranspositionTable.LOWER_BOUND) {
+                if(score > a) {
+                    a = score;
+                    if(a >= b)
+                        return a;
+                }
+            } else if(score < b) {
+                b = score;
+                if(a >= b)
+                    return b;
+            }
+            tableMove = TranspositionTable.move(entry);
+        }
+
+        int count = orderMoves(moves, current, mask, next, tableMove);
+        int[] columns = _moveLists[moves];
+        int bestMove = columns[0];
+        for(int i = 0; i < count; i++) {
+            long move = next & columnBits(columns[i]);
+            int score = -negamax(current ^ mask, mask | move, moves + 1, -b, -a);
+            if(score >= b) {
+                _transpositionTable.store(key, score, _cells - moves, TranspositionTable.LOWER_BOUND, columns[i]);
+                return score;
+            }
+            if(score > a) {
+                a = score;
+                bestMove = columns[i];
+            }
+        }
+        _transpositionTable.store(key, a, _cells - moves, TranspositionTable.UPPER_BOUND, bestMove);
+        return a;
+    }
+
+    /**
+     * Fills the move list of the ply with the columns of the moves, the
+     * table move first and then by the winning cells each move creates.
+     * Insertion sort, stable so equal orders keep the center-out order.
+     * @return The number of moves in the list.
+     */
+    private int orderMoves(int ply, long current, long mask, long next, int tableMove) {
+        int[] columns = _moveLists[ply];
+        int[] orders = _moveOrders[ply];
+        int count = 0;
+        for(int c : _centerOrder) {
+            long move = next & columnBits(c);
+            if(move == 0)
+                continue;
+            int order = c == tableMove ? Integer.MAX_VALUE : Long.bitCount(winningCells(current | move, mask | move));
+            int j = count++;
+            for(; j > 0 && orders[j - 1] < order; j--) {
+                columns[j] = columns[j - 1];
+                orders[j] = orders[j - 1];
+            }
+            columns[j] = c;
+            orders[j] = order;
+        }
+        return count;
+    }
+
+    /**
+     * @return The playable cells that do not let the opponent win at once:
+     *         the one forced block if there is one, none with two to block,
+     *         and never the cell below an opponent's winning cell.
+     */
+    private long nonLosingMoves(long current, long mask) {
+        long possible = possible(mask);
+        long opponentWins = winningCells(current ^ mask, mask);
+        long forced = possible & opponentWins;
+        if(forced != 0) {
+            if((forced & (forced - 1)) != 0)
+                return 0;
+            possible = forced;
+        }
+        return possible & ~(opponentWins >>> 1);
+    }
+
+    /**
+     * @return The empty cells that would complete a four for the coins.
+     */
+    private long winningCells(long coins, long mask) {
+        return BitboardGameState.getLineCompletions(coins, _height) & (_boardMask ^ mask);
+    }
+
+    private long possible(long mask) {
+        return (mask + _bottomMask) & _boardMask;
+    }
+
+    private long columnBits(int column) {
+        return _columnMask << (column * _height);
+    }
+
+    /**
+     * @return GameState's canonical key of the position, as stored in the
+     *         solved table.
+     */
+    private long canonicalKey(long current, long mask, int moves) {
+        long coins2 = moves % 2 == 0 ? current ^ mask : current;
+        long key = mask + _bottomMask + coins2;
+        long mirrorKey = mirror(mask) + _bottomMask + mirror(coins2);
+        return Math.min(key, mirrorKey);
+    }
+
+    private long mirror(long board) {
+        long mirrored = 0;
+        for(int c = 0; c < _cols; c++)
+            mirrored |= ((board >>> (c * _height)) & _columnMask) << ((_cols - 1 - c) * _height);
+        return mirrored;
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Decides after every completed iteration of a decision whether the next
+ * one is worth starting. The next iteration is predicted to take as long
+ * as the last one times the branching factor measured between the last
+ * two, and is not started if it would end past the move time, since an
+ * unfinished iteration is mostly wasted.
+ *
+ * Past half the move time no new iteration is started at all, unless the
+ * position looks critical: the best move changed or the score dropped in
+ * the last iteration. Each of those lets the decision use another half.
+ */
+public class TimeManager {
+    private static final double SOFT_LIMIT_FRACTION = 0.5;
+    private static final double DEFAULT_BRANCHING_FACTOR = 3;
+    private static final double MAX_BRANCHING_FACTOR = 10;
+    /** Iterations faster than this are too noisy to measure the branching factor. */
+    private static final long MIN_MEASURED_MS = 2;
+    private final long _moveTimeMs;
+    private final int _scoreDrop;
+    private double _branchingFactor = DEFAULT_BRANCHING_FACTOR;
+    private int _lastDepth;
+    private long _lastElapsedMs;
+    private long _lastIterationMs;
+    private int _lastMove = -1;
+    private int _lastScore;
+
+    /**
+     * @param moveTimeMs The time the decision may take at most.
+     * @param evaluationUnit GameState.getEvaluationUnit(), a score dropping
+     *        by half of it counts as a drop.
+     */
+    public TimeManager(long moveTimeMs, int evaluationUnit) {
+        _moveTimeMs = moveTimeMs;
+        _scoreDrop = Math.max(1, (evaluationUnit + 1) / 2);
+    }
+
+    /**
+     * Called with every iteration deeper than the ones before.
+     * @param elapsedMs The time since the decision started.
+     * @param score The score of the move, from the deciding player's side.
+     * @return true if the next iteration should be started.
+     */
+    public boolean iterationDone(int depth, long elapsedMs, int move, int score) {
+        long iterationMs = elapsedMs - _lastElapsedMs;
+        if(_lastIterationMs >= MIN_MEASURED_MS && depth > _lastDepth) {
+            // Parallel searches may complete more than one depth at a time
+            double factor = Math.pow((double) iterationMs / _lastIterationMs, 1.0 / (depth - _lastDepth));
+            _branchingFactor = Math.max(1, Math.min(MAX_BRANCHING_FACTOR, factor));
+        }
+
+        double softLimitFraction = SOFT_LIMIT_FRACTION;
+        if(_lastMove >= 0 && move != _lastMove)
+            softLimitFraction += SOFT_LIMIT_FRACTION;
+        if(_lastMove >= 0 && score <= _lastScore - _scoreDrop)
+            softLimitFraction += SOFT_LIMIT_FRACTION;
+
+        _lastDepth = depth;
+        _lastElapsedMs = elapsedMs;
+        _lastIterationMs = iterationMs;
+        _lastMove = move;
+        _lastScore = score;
+
+        if(elapsedMs >= softLimitFraction * _moveTimeMs)
+            return false;
+        return elapsedMs + Math.max(1, iterationMs) * _branchingFactor <= _moveTimeMs;
+    }
+
+    public double getBranchingFactor() {
+        return _branchingFactor;
+    }
+}
@@ -0,0 +1,120 @@
+import java.util.Arrays;
+
+/**
+ * Fixed size transposition table kept in two preallocated long arrays.
+ * Entries are grouped in buckets of two: the first slot keeps the deepest
+ * result seen for its bucket, the second is always replaced.
+ *
+ * An entry is packed into a single long:
+ * bits 0-31 score, 32-39 depth, 40-41 bound type, 42-49 best column + 1
+ * and bit 50 marks the slot as used, so an empty slot reads as 0.
+ *
+ * The table is shared by parallel searches without locking. The key array
+ * holds key ^ entry, so an entry torn by two threads writing the same slot
+ * no longer matches its key and is read as a miss.
+ */
+public class TranspositionTable {
+    public static final long NO_ENTRY = 0;
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1;
+    public static final int UPPER_BOUND = 2;
+
+    private static final int BYTES_PER_ENTRY = 16;
+    private static final long USED = 1L << 50;
+
+    private long[] _keys;
+    private long[] _data;
+    private int _bucketBits;
+
+    /**
+     * @param megabytes The memory budget for the table. The number of entries
+     *                  is rounded down to a power of two.
+     */
+    public TranspositionTable(int megabytes) {
+        if(megabytes < 1)
+            throw new IllegalArgumentException("The table needs at least one megabyte.");
+
+        long entries = Long.highestOneBit((long) megabytes * 1024 * 1024 / BYTES_PER_ENTRY);
+        entries = Math.min(entries, 1L << 30);
+        _bucketBits = Long.numberOfTrailingZeros(entries) - 1;
+        _keys = new long[(int) entries];
+        _data = new long[(int) entries];
+    }
+
+    public void clear() {
+        Arrays.fill(_keys, 0);
+        Arrays.fill(_data, 0);
+    }
+
+    /**
+     * @return The packed entry stored for the key, or NO_ENTRY.
+     */
+    public long probe(long key) {
+        int slot = bucketOf(key);
+        long entry = _data[slot];
+        if((_keys[slot] ^ entry) == key)
+            return entry;
+        entry = _data[slot + 1];
+        if((_keys[slot + 1] ^ entry) == key)
+            return entry;
+        return NO_ENTRY;
+    }
+
+    /**
+     * @param depth The remaining search depth below the position.
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND.
+     * @param bestMove The best column found, or -1 if none.
+     * @return true if the entry evicted another position.
+     */
+    public boolean store(long key, int score, int depth, int bound, int bestMove) {
+        long entry = entry(score, depth, bound, bestMove);
+
+        int slot = bucketOf(key);
+        long current = _data[slot];
+        if(current != NO_ENTRY && (_keys[slot] ^ current) != key && depth(current) > depth) {
+            slot++;
+            current = _data[slot];
+        }
+
+        boolean evicted = current != NO_ENTRY && (_keys[slot] ^ current) != key;
+        _keys[slot] = key ^ entry;
+        _data[slot] = entry;
+        return evicted;
+    }
+
+    /**
+     * @return The entry packed into a long, as probe() returns it.
+     */
+    public static long entry(int score, int depth, int bound, int bestMove) {
+        return USED
+                | ((long) (bestMove + 1) & 0xFF) << 42
+                | ((long) bound & 0x3) << 40
+                | ((long) Math.min(depth, 0xFF) & 0xFF) << 32
+                | (score & 0xFFFFFFFFL);
+    }
+
+    public static int score(long entry) {
+        return (int) entry;
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    public static int bound(long entry) {
+        return (int) (entry >>> 40) & 0x3;
+    }
+
+    /**
+     * @return The best column stored with the entry, or -1 if none.
+     */
+    public static int move(long entry) {
+        return ((int) (entry >>> 42) & 0xFF) - 1;
+    }
+
+    private int bucketOf(long key) {
+        if(_bucketBits == 0)
+            return 0;
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - _bucketBits)) << 1;
+    }
+}
@@ -0,0 +1,77 @@
+import benchmarks.Engine;
+
+/**
+ * The engine behind the benchmarks package, see benchmarks.Engine.
+ */
+public class BenchmarkEngine implements Engine {
+    private GameState[] _states;
+    private GameState _last;
+    private int _freeColumn;
+    private TranspositionTable _table;
+
+    @Override
+    public int load(String columns) {
+        _states = new GameState[columns.length() + 1];
+        GameState state = GameState.create(7, 6);
+        _states[0] = state.copy();
+        for(int i = 0; i < columns.length(); i++) {
+            state.addCoin(columns.charAt(i) - '0', i % 2 + 1);
+            _states[i + 1] = state.copy();
+            _states[i + 1].resetUndoStack();
+        }
+        _last = _states[_states.length - 1];
+        _freeColumn = -1;
+        for(int c = _last.getColumnCount() - 1; c >= 0; c--)
+            if(_last.getCoinsInColumn(c) < _last.getRowCount())
+                _freeColumn = c;
+        return _states.length;
+    }
+
+    @Override
+    public int addAndUndoCoin() {
+        _last.addCoin(_freeColumn, 1);
+        _last.undoAddCoin();
+        return _last.getCoinCount();
+    }
+
+    @Override
+    public int getCoinPlayer(int position, int column, int row) {
+        return _states[position].getCoinPlayer(column, row);
+    }
+
+    @Override
+    public long getCanonicalKey(int position) {
+        return _states[position].getCanonicalKey();
+    }
+
+    @Override
+    public boolean hasFourInARow(int position, int playerId) {
+        return _states[position].hasFourInARow(playerId);
+    }
+
+    @Override
+    public int getWinningColumns(int position, int playerId) {
+        return _states[position].getWinningColumns(playerId);
+    }
+
+    @Override
+    public int getEvaluation(int position) {
+        return _states[position].getEvaluation();
+    }
+
+    @Override
+    public void clearTable(int megabytes) {
+        if(_table == null)
+            _table = new TranspositionTable(megabytes);
+        else
+            _table.clear();
+    }
+
+    @Override
+    public long search(int depth) throws InterruptedException {
+        Search search = new Search(_last, _table, _last.getCoinCount() % 2 + 1);
+        for(int cutoff = 1; cutoff <= depth; cutoff++)
+            search.minimax(cutoff);
+        return search.getNodes();
+    }
+}
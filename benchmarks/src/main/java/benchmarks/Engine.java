@@ -0,0 +1,56 @@
+package benchmarks;
+
+/**
+ * The engine as the benchmarks see it. JMH needs benchmarks in a package,
+ * and a package can not import the engine's classes from the default
+ * package, so BenchmarkEngine implements this there and is loaded by name.
+ *
+ * An engine holds one standard position and the positions before it, the
+ * empty board first and the position itself last.
+ */
+public interface Engine {
+    /**
+     * @return A new engine, nothing loaded yet.
+     */
+    static Engine create() {
+        try {
+            return (Engine) Class.forName("BenchmarkEngine").getDeclaredConstructor().newInstance();
+        } catch(ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create BenchmarkEngine.", e);
+        }
+    }
+
+    /**
+     * Loads a 7x6 position.
+     * @param columns The columns played in turn, player 1 first.
+     * @return The number of positions, the empty board and one per move.
+     */
+    int load(String columns);
+
+    /**
+     * Adds a coin to the last position and takes it back.
+     * @return The coin count after.
+     */
+    int addAndUndoCoin();
+
+    int getCoinPlayer(int position, int column, int row);
+
+    long getCanonicalKey(int position);
+
+    boolean hasFourInARow(int position, int playerId);
+
+    int getWinningColumns(int position, int playerId);
+
+    int getEvaluation(int position);
+
+    /**
+     * Clears the table for the next search, allocating it the first time.
+     */
+    void clearTable(int megabytes);
+
+    /**
+     * Searches the last position with iterative deepening, as GameLogic does for a move.
+     * @return The number of nodes searched.
+     */
+    long search(int depth) throws InterruptedException;
+}
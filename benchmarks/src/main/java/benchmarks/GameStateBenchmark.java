@@ -0,0 +1,82 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The hot paths of GameState. Every call goes to the next of the positions
+ * leading up to the standard one, so the JIT can not hoist the work out of
+ * the loop. Run with -prof gc to see the allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameStateBenchmark {
+    @Param({"opening", "midgame", "nearFull"})
+    public String position;
+
+    private Engine _engine;
+    private int _positions;
+    private int _i;
+
+    @Setup
+    public void setUp() {
+        _engine = Engine.create();
+        _positions = _engine.load(Positions.columns(position));
+    }
+
+    private int next() {
+        _i++;
+        if(_i == _positions * 42)
+            _i = 0;
+        return _i;
+    }
+
+    @Benchmark
+    public int addAndUndoCoin() {
+        return _engine.addAndUndoCoin();
+    }
+
+    @Benchmark
+    public void getCoinPlayer(Blackhole blackhole) {
+        int i = next();
+        blackhole.consume(_engine.getCoinPlayer(i % _positions, i % 7, i % 6));
+    }
+
+    @Benchmark
+    public void getCanonicalKey(Blackhole blackhole) {
+        blackhole.consume(_engine.getCanonicalKey(next() % _positions));
+    }
+
+    @Benchmark
+    public void hasFourInARow(Blackhole blackhole) {
+        int i = next();
+        blackhole.consume(_engine.hasFourInARow(i % _positions, 1 + (i & 1)));
+    }
+
+    @Benchmark
+    public void getWinningColumns(Blackhole blackhole) {
+        int i = next();
+        blackhole.consume(_engine.getWinningColumns(i % _positions, 1 + (i & 1)));
+    }
+
+    @Benchmark
+    public void getEvaluation(Blackhole blackhole) {
+        blackhole.consume(_engine.getEvaluation(next() % _positions));
+    }
+}
@@ -0,0 +1,26 @@
+package benchmarks;
+
+/**
+ * The standard 7x6 positions the benchmarks run on.
+ */
+final class Positions {
+    private Positions() {
+    }
+
+    /**
+     * @param name opening, midgame or nearFull
+     * @return The columns played in turn, player 1 first.
+     */
+    static String columns(String name) {
+        switch(name) {
+            case "opening":
+                return "";
+            case "midgame":
+                return "3333311444426465";
+            case "nearFull":
+                return "332434443033400064006622116662";
+            default:
+                throw new IllegalArgumentException("Unknown position: " + name);
+        }
+    }
+}
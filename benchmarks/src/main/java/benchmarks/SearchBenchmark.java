@@ -0,0 +1,71 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Fixed depth searches from the standard positions on a cleared table, as
+ * GameLogic searches a move. The score is searches per second, the nodes
+ * counter nodes per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class SearchBenchmark {
+    private static final int TABLE_MEGABYTES = 64;
+
+    @Param({"opening", "midgame", "nearFull"})
+    public String position;
+
+    @Param({"10"})
+    public int depth;
+
+    private Engine _engine;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Nodes {
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            nodes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        _engine = Engine.create();
+        _engine.load(Positions.columns(position));
+    }
+
+    // Clearing 64 MB takes a while, so it is kept out of the measured time.
+    @Setup(Level.Invocation)
+    public void clearTable() {
+        _engine.clearTable(TABLE_MEGABYTES);
+    }
+
+    @Benchmark
+    public void search(Nodes counter, Blackhole blackhole) throws InterruptedException {
+        long nodes = _engine.search(depth);
+        counter.nodes += nodes;
+        blackhole.consume(nodes);
+    }
+}